@@ -0,0 +1,287 @@
+package mx.unam.ciencias.myp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+* <p>Piramide de las muestras ya evaluadas de una funcion, para que al
+* mover, acercar o alejar la ventana solo se evalue lo que falta.</p>
+* <p>Las muestras del nivel <i>k</i> viven en la malla global <i>x</i> =
+* <i>i</i> 2<sup><i>k</i></sup>, y cada ventana usa el nivel que le da al
+* menos <i>muestras</i> puntos. Cada nivel se guarda en celdas de
+* {@link #CELDA} indices consecutivos. Como los puntos de la malla son
+* exactos, la muestra <i>i</i> del nivel <i>k</i> es la muestra
+* <i>i</i> 2<sup><i>d</i></sup> del nivel <i>k</i> - <i>d</i>, asi que una
+* celda nueva se llena primero con lo que ya tienen los niveles cercanos:
+* al alejar la ventana casi todo se encuentra en los niveles de abajo, y
+* al acercarla la mitad de los puntos ya estaban en el nivel de
+* arriba. Al recorrerla, las celdas que ya estaban se reutilizan.</p>
+* <p>A lo mas se guardan {@link #MAXIMO_CELDAS} celdas entre todos los
+* niveles, se desaloja la que se uso hace mas tiempo.</p>
+* <p>Las partes donde la evaluacion por intervalos garantiza que la curva
+* no pasa por la ventana en y se marcan como recortadas y no se evaluan,
+* como en {@link Interprete#evaluaVisible}; si cambia la ventana en y
+* se vuelven a considerar.</p>
+* <p>Un almacen no se debe usar desde dos hilos a la vez.</p>
+*/
+public class AlmacenMuestras {
+
+	/** Cuantas muestras tiene una celda */
+	public static final int CELDA = 64;
+	/** Cuantas celdas se guardan a lo mas */
+	public static final int MAXIMO_CELDAS = 2048;
+
+	/* CELDA = 2^BITS_CELDA */
+	private static final int BITS_CELDA = 6;
+	/* cuantos niveles arriba y abajo se buscan muestras para una celda nueva */
+	private static final int NIVELES_BUSQUEDA = 16;
+	/* mas alla de esto los indices de la malla ya no son exactos */
+	private static final double INDICE_MAXIMO = 0x1p52;
+	/* para que los niveles, que van de -1023 a 1023, queden positivos */
+	private static final int DESPLAZAMIENTO_NIVEL = 2048;
+
+	/* los estados de una muestra */
+	private static final byte FALTA = 0;
+	private static final byte EVALUADA = 1;
+	private static final byte RECORTADA = 2;
+
+	/* Las muestras de CELDA indices consecutivos de un nivel */
+	private static class Celda {
+		final double[] ys = new double[CELDA];
+		final byte[] estados = new byte[CELDA];
+		/* la ventana en y con la que se recortaron sus muestras */
+		int ventana;
+	}
+
+	private final Interprete interprete;
+	/* las celdas de todos los niveles, la llave junta el nivel y la celda */
+	private final LinkedHashMap<Long, Celda> celdas;
+	/* cuantas celdas tiene cada nivel, para no buscar en los vacios */
+	private final int[] porNivel;
+	/* la ventana en y actual y su numero */
+	private double y0;
+	private double y1;
+	private int ventana;
+	/* cuantos puntos se han evaluado */
+	private long evaluaciones;
+
+	/**
+	* Construye un almacen vacio para la funcion.
+	* @param interprete el interprete de la funcion
+	*/
+	public AlmacenMuestras(Interprete interprete) {
+		this.interprete = interprete;
+		this.porNivel = new int[2 * DESPLAZAMIENTO_NIVEL];
+		this.celdas = new LinkedHashMap<Long, Celda>(64, 0.75f, true) {
+			@Override protected boolean removeEldestEntry(Map.Entry<Long, Celda> e) {
+				if (size() <= MAXIMO_CELDAS)
+					return false;
+				porNivel[(int) (e.getKey() >>> 48)]--;
+				return true;
+			}
+		};
+		this.y0 = Double.NaN;
+		this.y1 = Double.NaN;
+	}
+
+	/**
+	* Devuelve las muestras de la malla que cubren [<i>x0</i>, <i>x1</i>],
+	* evaluando solo las que no estaban en la piramide.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param y0 el valor mas bajo que se ve
+	* @param y1 el valor mas alto que se ve
+	* @param muestras cuantos puntos debe tener al menos la ventana
+	* @return puntos las coordenadas de las muestras
+	*/
+	public Puntos muestrea(double x0, double x1, double y0, double y1,
+											int muestras) {
+		int nivel = Math.getExponent((x1 - x0) / muestras);
+		double h = Math.scalb(1.0, nivel);
+		double i0 = Math.floor(x0 / h);
+		double i1 = Math.ceil(x1 / h);
+		if (Math.abs(i0) > INDICE_MAXIMO || Math.abs(i1) > INDICE_MAXIMO)
+			return interprete.evaluaVisible(x0, x1, y0, y1, muestras);
+		if (y0 != this.y0 || y1 != this.y1) {
+			this.y0 = y0;
+			this.y1 = y1;
+			ventana++;
+		}
+		long inicio = (long) i0;
+		int n = (int) (i1 - i0) + 1;
+		double[] ys = new double[n];
+		byte[] estados = new byte[n];
+		copia(nivel, inicio, ys, estados, true);
+		completa(inicio, h, ys, estados);
+		copia(nivel, inicio, ys, estados, false);
+		Puntos puntos = new Puntos(n);
+		for (int k = 0; k < n; k++)
+			if (estados[k] == EVALUADA)
+				puntos.agrega((inicio + k) * h, ys[k]);
+		return puntos;
+	}
+
+	/* copia las muestras de la ventana desde las celdas del nivel, o de
+	   regreso a ellas */
+	private void copia(int nivel, long inicio, double[] ys, byte[] estados, boolean lee) {
+		for (int k = 0; k < ys.length; ) {
+			long i = inicio + k;
+			Celda celda = celda(nivel, i >> BITS_CELDA);
+			int desde = (int) (i & (CELDA - 1));
+			int m = Math.min(CELDA - desde, ys.length - k);
+			if (lee) {
+				System.arraycopy(celda.ys, desde, ys, k, m);
+				System.arraycopy(celda.estados, desde, estados, k, m);
+			} else {
+				System.arraycopy(ys, k, celda.ys, desde, m);
+				System.arraycopy(estados, k, celda.estados, desde, m);
+			}
+			k += m;
+		}
+	}
+
+	private static long llave(int nivel, long celda) {
+		return ((long) (nivel + DESPLAZAMIENTO_NIVEL) << 48) | (celda & 0xffffffffffffL);
+	}
+
+	/* la celda del nivel, si no existe se crea con lo que haya en los
+	   otros niveles; lo recortado con otra ventana en y vuelve a faltar */
+	private Celda celda(int nivel, long c) {
+		long llave = llave(nivel, c);
+		Celda celda = celdas.get(llave);
+		if (celda == null) {
+			celda = new Celda();
+			celda.ventana = ventana;
+			llena(nivel, c << BITS_CELDA, celda);
+			celdas.put(llave, celda);
+			porNivel[nivel + DESPLAZAMIENTO_NIVEL]++;
+		} else if (celda.ventana != ventana) {
+			for (int k = 0; k < CELDA; k++)
+				if (celda.estados[k] == RECORTADA)
+					celda.estados[k] = FALTA;
+			celda.ventana = ventana;
+		}
+		return celda;
+	}
+
+	/* llena una celda nueva cuya primera muestra es base con las muestras
+	   ya evaluadas de los niveles cercanos: la muestra i es la i * 2^d de d
+	   niveles abajo, y la i / 2^d de d niveles arriba si i es multiplo
+	   de 2^d */
+	private void llena(int nivel, long base, Celda celda) {
+		int faltan = CELDA;
+		for (int d = 1; d <= NIVELES_BUSQUEDA && faltan > 0; d++) {
+			if (nivel - d >= -DESPLAZAMIENTO_NIVEL && porNivel[nivel - d + DESPLAZAMIENTO_NIVEL] > 0 &&
+				Math.abs(base) < (1L << (62 - BITS_CELDA - d)))
+				faltan -= busca(nivel - d, base, d, 0, celda);
+			if (nivel + d < DESPLAZAMIENTO_NIVEL && porNivel[nivel + d + DESPLAZAMIENTO_NIVEL] > 0)
+				faltan -= busca(nivel + d, base, 0, d, celda);
+		}
+	}
+
+	/* copia a la celda las muestras evaluadas de otro nivel, la muestra i
+	   de la celda es la (i << abajo) >> arriba de ese nivel; devuelve
+	   cuantas encontro */
+	private int busca(int otro, long base, int abajo, int arriba, Celda celda) {
+		int encontradas = 0;
+		long ultima = Long.MIN_VALUE;
+		Celda fuente = null;
+		long multiplo = (1L << arriba) - 1;
+		for (int k = 0; k < CELDA; k++) {
+			long i = base + k;
+			if (celda.estados[k] == EVALUADA || (i & multiplo) != 0)
+				continue;
+			long j = (i << abajo) >> arriba;
+			long c = j >> BITS_CELDA;
+			if (c != ultima) {
+				fuente = celdas.get(llave(otro, c));
+				ultima = c;
+			}
+			int m = (int) (j & (CELDA - 1));
+			if (fuente != null && fuente.estados[m] == EVALUADA) {
+				celda.ys[k] = fuente.ys[m];
+				celda.estados[k] = EVALUADA;
+				encontradas++;
+			}
+		}
+		return encontradas;
+	}
+
+	/* recorta y evalua cada corrida de muestras que faltan en la ventana */
+	private void completa(long inicio, double h, double[] ys, byte[] estados) {
+		int faltan = 0;
+		for (int k = 0; k < estados.length; k++) {
+			if (estados[k] != FALTA)
+				continue;
+			int fin = k;
+			while (fin + 1 < estados.length && estados[fin + 1] == FALTA)
+				fin++;
+			faltan += recorta(inicio, k, fin, h, estados);
+			k = fin;
+		}
+		if (faltan == 0)
+			return;
+		double[] xs = new double[faltan];
+		double[] valores = new double[faltan];
+		for (int k = 0, m = 0; k < estados.length; k++)
+			if (estados[k] == FALTA)
+				xs[m++] = (inicio + k) * h;
+		interprete.evalua(xs, valores);
+		evaluaciones += faltan;
+		for (int k = 0, m = 0; k < estados.length; k++) {
+			if (estados[k] == FALTA) {
+				ys[k] = valores[m++];
+				estados[k] = EVALUADA;
+			}
+		}
+	}
+
+	/* marca como recortadas las muestras de la corrida [a, b] que caen
+	   fuera de los tramos visibles y no son vecinas de uno; los extremos
+	   de la corrida siempre se evaluan, asi la linea sale y vuelve a
+	   entrar por el mismo lado. Devuelve cuantas quedan por evaluar */
+	private int recorta(long inicio, int a, int b, double h, byte[] estados) {
+		if (b - a < 2)
+			return b - a + 1;
+		boolean[] necesarias = new boolean[b - a + 1];
+		necesarias[0] = necesarias[b - a] = true;
+		for (double[] t : interprete.tramosVisibles((inicio + a) * h, (inicio + b) * h, y0, y1, h)) {
+			long desde = (long) Math.ceil(t[0] / h) - 1 - inicio;
+			long hasta = (long) Math.floor(t[1] / h) + 1 - inicio;
+			for (long k = Math.max(desde, a); k <= Math.min(hasta, b); k++)
+				necesarias[(int) (k - a)] = true;
+		}
+		int faltan = 0;
+		for (int k = a; k <= b; k++) {
+			if (necesarias[k - a])
+				faltan++;
+			else
+				estados[k] = RECORTADA;
+		}
+		return faltan;
+	}
+
+	/**
+	* Devuelve cuantos puntos ha evaluado el almacen.
+	* @return el numero de evaluaciones
+	*/
+	public long evaluaciones() {
+		return evaluaciones;
+	}
+
+	/**
+	* Devuelve cuantas celdas guarda el almacen entre todos los niveles.
+	* @return el numero de celdas
+	*/
+	public int celdas() {
+		return celdas.size();
+	}
+
+	/**
+	* Devuelve el interprete de la funcion.
+	* @return el interprete de la funcion
+	*/
+	public Interprete interprete() {
+		return interprete;
+	}
+}
@@ -0,0 +1,136 @@
+package mx.unam.ciencias.myp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+* <p>Cache acotado de expresiones ya compiladas, desaloja la expresion
+* usada hace mas tiempo (LRU).</p>
+* <p>La primera llave es el texto normalizado: los mismos tokens que
+* ve el {@link Analizador}, en minusculas y separados por un solo
+* espacio. Si el texto no esta, se compila y se busca por su forma
+* canonica, donde los operandos de <code>+</code> y <code>*</code> se
+* ordenan, asi <code>(+ x 1)</code> y <code>(+ 1 x)</code> comparten el
+* mismo {@link Interprete}.</p>
+*/
+public class CacheExpresiones {
+
+	private LinkedHashMap<String, Interprete> expresiones;
+	private int capacidad;
+	private long aciertos;
+	private long aciertosCanonicos;
+	private long fallos;
+	private long desalojos;
+
+	/**
+	* Construye un cache que guarda a lo mas <i>capacidad</i> llaves.
+	* @param capacidad el numero maximo de llaves
+	*/
+	public CacheExpresiones(int capacidad) {
+		this.capacidad = capacidad;
+		this.expresiones = new LinkedHashMap<String, Interprete>(16, 0.75f, true) {
+			@Override protected boolean removeEldestEntry(Map.Entry<String, Interprete> e) {
+				if (size() <= CacheExpresiones.this.capacidad)
+					return false;
+				desalojos++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	* Devuelve el interprete de la expresion, compilandola solo si no
+	* estaba en el cache. La compilacion se hace fuera del candado, asi
+	* que varios hilos pueden compilar expresiones distintas al mismo
+	* tiempo.
+	* @param expresion la expresion como la escribio el usuario
+	* @return el interprete de la expresion
+	* @throws MalFormedFunctionException si la expresion no es valida
+	*/
+	public Interprete obten(String expresion) throws MalFormedFunctionException {
+		String texto = normaliza(expresion);
+		synchronized (this) {
+			Interprete interprete = expresiones.get(texto);
+			if (interprete != null) {
+				aciertos++;
+				return interprete;
+			}
+		}
+		GrafoExpresion grafo = new GrafoExpresion(Compilador.compila(Analizador.procesa(texto)));
+		String canonica = "=" + grafo.canonica();
+		synchronized (this) {
+			Interprete interprete = expresiones.get(canonica);
+			if (interprete != null) {
+				aciertosCanonicos++;
+				expresiones.put(texto, interprete);
+				return interprete;
+			}
+		}
+		Interprete nuevo = new Interprete(new Programa(grafo));
+		synchronized (this) {
+			/* otro hilo pudo haberla compilado mientras tanto */
+			Interprete interprete = expresiones.get(canonica);
+			if (interprete != null) {
+				aciertosCanonicos++;
+			} else {
+				fallos++;
+				interprete = nuevo;
+				expresiones.put(canonica, interprete);
+			}
+			expresiones.put(texto, interprete);
+			return interprete;
+		}
+	}
+
+	/**
+	* Normaliza el texto de una expresion: minusculas y un solo espacio
+	* entre tokens.
+	* @param expresion la expresion a normalizar
+	* @return la expresion normalizada
+	*/
+	public static String normaliza(String expresion) {
+		StringTokenizer tokens = new StringTokenizer(expresion.toLowerCase(), " \t\n\r()", true);
+		StringBuilder sb = new StringBuilder(expresion.length());
+		while (tokens.hasMoreTokens()) {
+			String token = tokens.nextToken();
+			if (Character.isWhitespace(token.charAt(0)))
+				continue;
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(token);
+		}
+		return sb.toString();
+	}
+
+	/** Vacia el cache, las estadisticas se conservan */
+	public synchronized void limpia() {
+		expresiones.clear();
+	}
+
+	/** @return cuantas veces se encontro el texto normalizado */
+	public synchronized long aciertos() {
+		return aciertos;
+	}
+
+	/** @return cuantas veces se encontro la forma canonica */
+	public synchronized long aciertosCanonicos() {
+		return aciertosCanonicos;
+	}
+
+	/** @return cuantas expresiones hubo que compilar desde cero */
+	public synchronized long fallos() {
+		return fallos;
+	}
+
+	/** @return cuantas llaves se desalojaron */
+	public synchronized long desalojos() {
+		return desalojos;
+	}
+
+	/** Devuelve las estadisticas del cache */
+	@Override public synchronized String toString() {
+		return String.format("aciertos=%d canonicos=%d fallos=%d desalojos=%d llaves=%d",
+							 aciertos, aciertosCanonicos, fallos, desalojos, expresiones.size());
+	}
+}
@@ -3,6 +3,7 @@ package mx.unam.ciencias.myp;
 import mx.unam.ciencias.edd.Lista;
 import mx.unam.ciencias.edd.ArbolDerivacion;
 import mx.unam.ciencias.edd.Pila;
+import mx.unam.ciencias.edd.VerticeArbolBinario;
 import java.util.NoSuchElementException;
 
 /** 
@@ -18,6 +19,7 @@ public class Compilador {
 	/**
 	* Funcion que transforma los tokens en funciones de acuerdo a su 
 	* valor, y posición.
+	* El arbol que se devuelve ya pasó por {@link #optimiza}.
 	* @param lista una lista de {@link Muestra} basadas en una grámatica.
 	* @return arbol un arbol de derivación listo para ser interpretado.
 	* @throws MalFormedFunctionException en caso de estar mal formada la funcion.
@@ -25,7 +27,119 @@ public class Compilador {
 	public static ArbolDerivacion<Muestra<Funcion>> compila(Lista<Muestra<String>> lista)
 			throws MalFormedFunctionException {
 		ArbolDerivacion<Muestra<Funcion>> arbol = crearArbol(lista);
-		return arbol;
+		return optimiza(arbol);
+	}
+
+	/* Un subarbol del arbol de derivacion, sirve para reescribirlo antes
+	   de volver a armar el ArbolDerivacion */
+	private static class Subarbol {
+		Muestra<Funcion> raiz;
+		Subarbol izquierdo;
+		Subarbol derecho;
+
+		Subarbol(Muestra<Funcion> raiz, Subarbol izquierdo, Subarbol derecho) {
+			this.raiz = raiz;
+			this.izquierdo = izquierdo;
+			this.derecho = derecho;
+		}
+
+		boolean esConstante() {
+			return raiz.tipo() == Gramatica.NUMERO;
+		}
+
+		double valor() {
+			return ((Funcion.Constante) raiz.get()).evalua();
+		}
+
+		boolean es(double v) {
+			return esConstante() && valor() == v;
+		}
+	}
+
+	/**
+	* Simplifica un arbol de derivacion: evalua de una vez los subarboles
+	* que solo tienen constantes y elimina las identidades
+	* <code>e+0</code>, <code>e-0</code>, <code>e*1</code>, <code>e/1</code>,
+	* <code>e^1</code>, y reduce <code>e*0</code> a <code>0</code> y
+	* <code>e^0</code> a <code>1</code>.
+	* @param arbol el arbol generado a partir de las muestras
+	* @return un arbol nuevo equivalente al original, o el mismo si es vacío
+	*/
+	public static ArbolDerivacion<Muestra<Funcion>> optimiza(ArbolDerivacion<Muestra<Funcion>> arbol) {
+		if (arbol == null || arbol.getElementos() == 0)
+			return arbol;
+		Subarbol s = simplifica(subarbol(arbol.raiz()));
+		ArbolDerivacion<Muestra<Funcion>> optimizado = new ArbolDerivacion<Muestra<Funcion>>();
+		llena(optimizado, s, null);
+		return optimizado;
+	}
+
+	private static Subarbol subarbol(VerticeArbolBinario<Muestra<Funcion>> v) {
+		Subarbol izquierdo = v.hayIzquierdo() ? subarbol(v.getIzquierdo()) : null;
+		Subarbol derecho = v.hayDerecho() ? subarbol(v.getDerecho()) : null;
+		return new Subarbol(v.get(), izquierdo, derecho);
+	}
+
+	/* vuelve a armar el arbol de derivacion en preorden */
+	private static void llena(ArbolDerivacion<Muestra<Funcion>> arbol, Subarbol s, Muestra<Funcion> padre) {
+		arbol.agrega(s.raiz, padre);
+		if (s.izquierdo != null)
+			llena(arbol, s.izquierdo, s.raiz);
+		if (s.derecho != null)
+			llena(arbol, s.derecho, s.raiz);
+	}
+
+	private static Subarbol constante(double v) {
+		return new Subarbol(new Muestra<Funcion>(new Funcion.Constante(v), Gramatica.NUMERO), null, null);
+	}
+
+	/* simplifica de las hojas hacia la raiz */
+	private static Subarbol simplifica(Subarbol s) {
+		if (s.izquierdo != null)
+			s.izquierdo = simplifica(s.izquierdo);
+		if (s.derecho != null)
+			s.derecho = simplifica(s.derecho);
+		Subarbol i = s.izquierdo, d = s.derecho;
+		if (s.raiz.tipo() == Gramatica.FUNCION && i != null && i.esConstante()) {
+			Funcion.Trigonometrica f = (Funcion.Trigonometrica) s.raiz.get();
+			return constante(f.evalua(i.valor()));
+		}
+		if (s.raiz.tipo() != Gramatica.OPERADOR || i == null || d == null)
+			return s;
+		char op = ((Funcion.Algebraica) s.raiz.get()).seleccion();
+		if (i.esConstante() && d.esConstante())
+			return constante(Funcion.algebraica(op, i.valor(), d.valor()));
+		switch (op) {
+			case '+':
+				if (d.es(0))
+					return i;
+				if (i.es(0))
+					return d;
+			break;
+			case '-':
+				if (d.es(0))
+					return i;
+			break;
+			case '*':
+				if (d.es(1))
+					return i;
+				if (i.es(1))
+					return d;
+				if (d.es(0) || i.es(0))
+					return constante(0);
+			break;
+			case '/':
+				if (d.es(1))
+					return i;
+			break;
+			case '^':
+				if (d.es(1))
+					return i;
+				if (d.es(0))
+					return constante(1);
+			break;
+		}
+		return s;
 	}
 
 	/**
@@ -78,10 +192,7 @@ public class Compilador {
 			break;
 			/* cosas raras que hace uno */
 			case VARIABLE:
-				double signo = Double.POSITIVE_INFINITY;
-				if(m.get().equals("-x"))
-					signo = Double.MIN_VALUE;
-				mf = new Muestra<Funcion>(new Funcion.Constante(signo), Gramatica.VARIABLE);
+				mf = new Muestra<Funcion>(new Funcion.X(m.get().equals("-x")), Gramatica.VARIABLE);
 			break;
 			/* Si no era valido en la gramatica, aqui se va a quejar */
 			case DESCONOCIDO:
@@ -0,0 +1,48 @@
+package mx.unam.ciencias.myp;
+
+/**
+* <p>La memoria de trabajo de las evaluaciones de un {@link Programa}: la
+* pila, las ranuras de las subexpresiones comunes, las columnas de la
+* evaluacion por bloques y las pilas de la evaluacion por
+* intervalos.</p>
+* <p>El programa no cambia despues de compilarse, todo lo que cambia al
+* evaluar vive aqui, asi que varios hilos pueden evaluar el mismo
+* programa al mismo tiempo mientras cada uno use su propio contexto.
+* Un contexto no se debe compartir entre hilos.</p>
+*/
+public class ContextoEvaluacion {
+
+	/* la pila y despues de ella las ranuras */
+	final double[] pila;
+	/* las columnas, se reservan la primera vez que se evalua por bloques */
+	private double[][] columnas;
+	/* los extremos inferiores y superiores de la evaluacion por intervalos */
+	private double[] inferiores;
+	private double[] superiores;
+
+	/* solo el Programa sabe cuanta memoria necesita */
+	ContextoEvaluacion(int memoria) {
+		pila = new double[memoria];
+	}
+
+	/* las columnas de la evaluacion por bloques */
+	double[][] columnas() {
+		if (columnas == null)
+			columnas = new double[pila.length][Programa.BLOQUE];
+		return columnas;
+	}
+
+	/* la pila de extremos inferiores de la evaluacion por intervalos */
+	double[] inferiores() {
+		if (inferiores == null)
+			inferiores = new double[pila.length];
+		return inferiores;
+	}
+
+	/* la pila de extremos superiores de la evaluacion por intervalos */
+	double[] superiores() {
+		if (superiores == null)
+			superiores = new double[pila.length];
+		return superiores;
+	}
+}
@@ -17,14 +17,14 @@ import java.awt.RenderingHints;
 * muestra en la venta principal
 */
 public class DibujaGUI extends JPanel {
-  /* la lista de poligonos que se va a trazar */
-    private Lista<Polygon> poligonos;
+  /* los tramos de cada grafica que se van a trazar */
+    private Lista<Lista<Polygon>> poligonos;
 
     /**
-    * Constrctor por defecto, recibe una {@link Lista} de {@link Polygon} 
-    * donde estan contenidas las graficas por dibujar
+    * Constrctor por defecto, recibe una {@link Lista} con los {@link Polygon}
+    * de cada una de las graficas por dibujar
     */
-    public DibujaGUI(Lista<Polygon> graficas, int ancho, int alto) {
+    public DibujaGUI(Lista<Lista<Polygon>> graficas, int ancho, int alto) {
            super();
             setBackground(new Color(0,0,0,0));
             setSize(ancho, alto);
@@ -37,19 +37,34 @@ public class DibujaGUI extends JPanel {
     */
     @Override  public void paintComponent(Graphics g) {
                super.paintComponent(g);
-             Graphics2D g2 = (Graphics2D) g;
+              dibuja((Graphics2D) g, poligonos);
+          
+        }
+
+    /**
+    * Dibuja las graficas como lo hace el panel, sin necesitar un panel ni
+    * el hilo de eventos; sirve para dibujar sobre una imagen.
+    * @param g2 donde se dibuja
+    * @param poligonos las graficas por dibujar, cada una en tramos
+    */
+    public static void dibuja(Graphics2D g2, Lista<Lista<Polygon>> poligonos) {
               g2.setStroke(new BasicStroke(2));
               g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
               int i = 0;
-               for(Polygon grafica : poligonos) {
-                    g2.setColor(Color.decode(randomColor(i++)));
-                    g2.drawPolyline(grafica.xpoints, grafica.ypoints, grafica.npoints);
+               for(Lista<Polygon> grafica : poligonos) {
+                    g2.setColor(color(i++));
+                    for (Polygon tramo : grafica)
+                        g2.drawPolyline(tramo.xpoints, tramo.ypoints, tramo.npoints);
                }
-          
+    }
+
+        /* El color de la grafica i, tambien lo usa el Rasterizador */
+        static Color color(int i) {
+            return Color.decode(randomColor(i));
         }
 
         /* Devuelve un color para generar una grafica colorida */
-        private String randomColor(int i) {
+        private static String randomColor(int i) {
             String [] colors = {"007AFF","FF1300","4CD964",
                                 "FF2D55", "E0F8D8","81F3FD",
                                 "FFCD02", "DBDDDE"};
@@ -0,0 +1,296 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+* <p>Escribe las graficas como PNG sin tener la imagen completa en
+* memoria.</p>
+* <p>La imagen se dibuja en franjas de renglones con un
+* {@link Rasterizador}. Cada franja se filtra y se comprime en un hilo
+* como un pedazo independiente del flujo deflate: se vacia con
+* {@link Deflater#SYNC_FLUSH} para que termine en un byte completo y los
+* pedazos se puedan pegar, y solo la ultima lo cierra. Los pedazos se
+* escriben en orden a un {@link FileChannel}, cada uno en su propio
+* <code>IDAT</code>, en cuanto estan listos. A lo mas hay unas cuantas
+* franjas en vuelo, asi que la memoria no depende del alto de la
+* imagen.</p>
+* <p>El filtro de cada renglon es el que deja la menor suma de los bytes
+* filtrados vistos con signo, como sugiere la especificacion de PNG.</p>
+*/
+public class EscritorPNG {
+
+	/** Cuantos pixeles tiene mas o menos cada franja */
+	public static final int PIXELES_FRANJA = 1 << 18;
+
+	private static final byte[] FIRMA = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+	/* deflate con ventana de 32K y compresion normal */
+	private static final byte[] CABECERA_ZLIB = { 0x78, (byte) 0x9c };
+	private static final int BASE_ADLER = 65521;
+	/* RGBA de 8 bits */
+	private static final int BYTES_PIXEL = 4;
+
+	/* los hilos que dibujan, filtran y comprimen las franjas */
+	private static final ExecutorService HILOS = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "escritor-png");
+			t.setDaemon(true);
+			return t;
+		});
+
+	/* Una franja ya comprimida */
+	private static class Franja {
+		/* el pedazo del flujo deflate */
+		byte[] datos;
+		int longitud;
+		/* la suma de Adler-32 de los bytes sin comprimir y cuantos son */
+		long adler;
+		long bytes;
+		/* el CRC del IDAT, con todo y su tipo */
+		long crc;
+	}
+
+	private final int ancho;
+	private final int alto;
+	private final int renglonesFranja;
+
+	/**
+	* Construye un escritor de imagenes de las medidas dadas.
+	* @param ancho el ancho de la imagen
+	* @param alto el alto de la imagen
+	*/
+	public EscritorPNG(int ancho, int alto) {
+		if (ancho <= 0 || alto <= 0)
+			throw new IllegalArgumentException("Medidas invalidas: " + ancho + "x" + alto);
+		this.ancho = ancho;
+		this.alto = alto;
+		this.renglonesFranja = Math.max(1, Math.min(alto, PIXELES_FRANJA / ancho));
+	}
+
+	/**
+	* Dibuja las polilineas y las escribe en el archivo como PNG.
+	* @param poligonos las polilineas en pixeles de cada grafica
+	* @param archivo el archivo donde se guarda la imagen
+	* @throws IOException si no se puede escribir el archivo
+	*/
+	public void escribe(Lista<Lista<Polygon>> poligonos, File archivo) throws IOException {
+		try (FileChannel canal = FileChannel.open(archivo.toPath(), StandardOpenOption.WRITE,
+												  StandardOpenOption.CREATE,
+												  StandardOpenOption.TRUNCATE_EXISTING)) {
+			escribe(canal, FIRMA);
+			ByteBuffer ihdr = ByteBuffer.allocate(13);
+			ihdr.putInt(ancho).putInt(alto);
+			/* 8 bits, RGBA, deflate, filtros por renglon, sin entrelazar */
+			ihdr.put((byte) 8).put((byte) 6).put((byte) 0).put((byte) 0).put((byte) 0);
+			pedazo(canal, "IHDR", ihdr.array(), ihdr.array().length, crc("IHDR", ihdr.array(), 13));
+			escribeFranjas(poligonos, canal);
+			pedazo(canal, "IEND", new byte[0], 0, crc("IEND", new byte[0], 0));
+		}
+	}
+
+	/* comprime las franjas en paralelo y las escribe en orden; a lo mas
+	   hay una franja mas en vuelo que hilos */
+	private void escribeFranjas(Lista<Lista<Polygon>> poligonos, FileChannel canal) throws IOException {
+		int franjas = (alto + renglonesFranja - 1) / renglonesFranja;
+		int enVuelo = Runtime.getRuntime().availableProcessors() + 1;
+		/* no es una Cola de edd: su lista guarda la liga hacia los nodos que
+		   ya salieron y retendria todas las franjas */
+		ArrayDeque<Future<Franja>> pendientes = new ArrayDeque<>();
+		long adler = 1;
+		int siguiente = 0;
+		try {
+			for (int escrita = 0; escrita < franjas; escrita++) {
+				while (siguiente < franjas && siguiente - escrita < enVuelo) {
+					final int f = siguiente++;
+					pendientes.add(HILOS.submit(() -> franja(poligonos, f, f == franjas - 1)));
+				}
+				Franja franja = pendientes.remove().get();
+				pedazo(canal, "IDAT", franja.datos, franja.longitud, franja.crc);
+				adler = combinaAdler(adler, franja.adler, franja.bytes);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Se interrumpio la escritura", ie);
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException(ee.getCause());
+		} finally {
+			while (!pendientes.isEmpty())
+				pendientes.remove().cancel(true);
+		}
+		/* el final del flujo zlib */
+		byte[] suma = ByteBuffer.allocate(4).putInt((int) adler).array();
+		pedazo(canal, "IDAT", suma, 4, crc("IDAT", suma, 4));
+	}
+
+	/* dibuja, filtra y comprime la franja f */
+	private Franja franja(Lista<Lista<Polygon>> poligonos, int f, boolean ultima) {
+		int inicio = f * renglonesFranja;
+		int renglones = Math.min(renglonesFranja, alto - inicio);
+		/* se dibuja tambien el renglon de arriba, los filtros lo usan */
+		int arriba = inicio > 0 ? 1 : 0;
+		Rasterizador rasterizador = new Rasterizador(ancho, alto, inicio - arriba, renglones + arriba);
+		rasterizador.dibuja(poligonos, false);
+		int[] pixeles = rasterizador.pixeles();
+
+		int largo = ancho * BYTES_PIXEL;
+		byte[] anterior = new byte[largo];
+		byte[] actual = new byte[largo];
+		if (arriba == 1)
+			rgba(pixeles, 0, anterior);
+		byte[][] filtrados = new byte[5][largo + 1];
+		byte[] crudo = new byte[renglones * (largo + 1)];
+		for (int r = 0; r < renglones; r++) {
+			rgba(pixeles, (r + arriba) * ancho, actual);
+			byte[] mejor = filtra(actual, anterior, filtrados);
+			System.arraycopy(mejor, 0, crudo, r * (largo + 1), largo + 1);
+			byte[] t = anterior;
+			anterior = actual;
+			actual = t;
+		}
+
+		Franja franja = new Franja();
+		Adler32 adler = new Adler32();
+		adler.update(crudo, 0, crudo.length);
+		franja.adler = adler.getValue();
+		franja.bytes = crudo.length;
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(crudo);
+			if (ultima)
+				deflater.finish();
+			int cabecera = f == 0 ? CABECERA_ZLIB.length : 0;
+			byte[] datos = new byte[cabecera + crudo.length / 4 + 64];
+			System.arraycopy(CABECERA_ZLIB, 0, datos, 0, cabecera);
+			int n = cabecera;
+			while (true) {
+				n += deflater.deflate(datos, n, datos.length - n,
+									  ultima ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				/* si no lleno el arreglo ya termino */
+				if (n < datos.length && (ultima ? deflater.finished() : deflater.needsInput()))
+					break;
+				if (n == datos.length)
+					datos = Arrays.copyOf(datos, datos.length * 2);
+			}
+			franja.datos = datos;
+			franja.longitud = n;
+		} finally {
+			deflater.end();
+		}
+		franja.crc = crc("IDAT", franja.datos, franja.longitud);
+		return franja;
+	}
+
+	/* los pixeles de un renglon en RGBA */
+	private void rgba(int[] pixeles, int desde, byte[] renglon) {
+		for (int x = 0, b = 0; x < ancho; x++) {
+			int p = pixeles[desde + x];
+			renglon[b++] = (byte) (p >> 16);
+			renglon[b++] = (byte) (p >> 8);
+			renglon[b++] = (byte) p;
+			renglon[b++] = (byte) (p >>> 24);
+		}
+	}
+
+	/* aplica los cinco filtros al renglon y devuelve el de menor suma,
+	   con el tipo de filtro en su primer byte */
+	private static byte[] filtra(byte[] actual, byte[] anterior, byte[][] filtrados) {
+		int n = actual.length;
+		long mejorSuma = Long.MAX_VALUE;
+		byte[] mejor = null;
+		for (int tipo = 0; tipo < 5; tipo++) {
+			byte[] salida = filtrados[tipo];
+			salida[0] = (byte) tipo;
+			long suma = 0;
+			for (int i = 0; i < n; i++) {
+				int x = actual[i] & 0xff;
+				int a = i >= BYTES_PIXEL ? actual[i - BYTES_PIXEL] & 0xff : 0;
+				int b = anterior[i] & 0xff;
+				int c = i >= BYTES_PIXEL ? anterior[i - BYTES_PIXEL] & 0xff : 0;
+				int prediccion;
+				switch (tipo) {
+				case 0: prediccion = 0; break;
+				case 1: prediccion = a; break;
+				case 2: prediccion = b; break;
+				case 3: prediccion = (a + b) >> 1; break;
+				default: prediccion = paeth(a, b, c);
+				}
+				byte v = (byte) (x - prediccion);
+				salida[i + 1] = v;
+				suma += Math.abs(v);
+			}
+			if (suma < mejorSuma) {
+				mejorSuma = suma;
+				mejor = salida;
+			}
+		}
+		return mejor;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc)
+			return a;
+		return pb <= pc ? b : c;
+	}
+
+	/* la suma de Adler-32 de dos bloques seguidos, conociendo la de cada
+	   uno y el largo del segundo, como adler32_combine de zlib */
+	static long combinaAdler(long adler1, long adler2, long largo2) {
+		long resto = largo2 % BASE_ADLER;
+		long suma1 = adler1 & 0xffff;
+		long suma2 = resto * suma1 % BASE_ADLER;
+		suma1 += (adler2 & 0xffff) + BASE_ADLER - 1;
+		suma2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE_ADLER - resto;
+		if (suma1 >= BASE_ADLER)
+			suma1 -= BASE_ADLER;
+		if (suma1 >= BASE_ADLER)
+			suma1 -= BASE_ADLER;
+		if (suma2 >= 2 * BASE_ADLER)
+			suma2 -= 2 * BASE_ADLER;
+		if (suma2 >= BASE_ADLER)
+			suma2 -= BASE_ADLER;
+		return suma1 | (suma2 << 16);
+	}
+
+	private static long crc(String tipo, byte[] datos, int longitud) {
+		CRC32 crc = new CRC32();
+		crc.update(tipo.getBytes(StandardCharsets.US_ASCII));
+		crc.update(datos, 0, longitud);
+		return crc.getValue();
+	}
+
+	/* escribe un pedazo de PNG: largo, tipo, datos y CRC */
+	private static void pedazo(FileChannel canal, String tipo, byte[] datos, int longitud,
+							   long crc) throws IOException {
+		ByteBuffer cabecera = ByteBuffer.allocate(8);
+		cabecera.putInt(longitud).put(tipo.getBytes(StandardCharsets.US_ASCII)).flip();
+		ByteBuffer cola = ByteBuffer.allocate(4);
+		cola.putInt((int) crc).flip();
+		ByteBuffer[] partes = { cabecera, ByteBuffer.wrap(datos, 0, longitud), cola };
+		long total = 12L + longitud;
+		while (total > 0)
+			total -= canal.write(partes);
+	}
+
+	private static void escribe(FileChannel canal, byte[] datos) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(datos);
+		while (b.hasRemaining())
+			canal.write(b);
+	}
+}
@@ -0,0 +1,391 @@
+package mx.unam.ciencias.myp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+* <p>Escribe un documento SVG directamente a un {@link Appendable}, por
+* ejemplo un {@link Writer} sobre un archivo, sin armar el documento en
+* memoria.</p>
+* <p>Todo pasa por un arreglo de caracteres propio que se vacia a la
+* salida cuando se llena, y los numeros se escriben digito por digito
+* con los decimales que se pidan, asi que escribir un punto no crea
+* objetos y el tiempo es lineal en el numero de puntos.</p>
+* <p>Con el formato {@link Formato#TRAYECTORIA} las coordenadas se
+* redondean a la precision pedida antes de escribirse, se descartan los
+* puntos repetidos y los que quedan en la misma recta que sus vecinos, y
+* cada punto se escribe como el desplazamiento desde el anterior, que
+* casi siempre es un numero corto.</p>
+*/
+public class EscritorSVG {
+
+	/** Como se escriben las lineas */
+	public enum Formato {
+		/** un <code>polyline</code> con todos los puntos en coordenadas
+		 * absolutas */
+		POLILINEA,
+		/** un <code>path</code> con movimientos relativos y sin puntos de
+		 * sobra; los puntos que no son numeros cortan la linea */
+		TRAYECTORIA
+	}
+
+	/** Cuantos decimales se escriben de cada coordenada si no se dice otra cosa */
+	public static final int DECIMALES = 3;
+	/** Cuantos decimales se pueden pedir a lo mas */
+	public static final int MAXIMO_DECIMALES = 6;
+
+	/* de aqui para arriba (ya multiplicados por 10^decimales) los numeros se
+	   escriben con Double.toString, o cortan la trayectoria */
+	private static final double MAXIMO_FIJO = 1e15;
+	/* con desplazamientos menores los productos cruzados no se desbordan */
+	private static final long MAXIMO_CRUZADO = 1L << 31;
+	private static final int CAPACIDAD = 8192;
+
+	private final Appendable salida;
+	private final Formato formato;
+	private final char[] bufer;
+	/* el mismo bufer visto como CharSequence, para los Appendable que no
+	   son Writer */
+	private final CharBuffer vista;
+	private int usados;
+	/* los digitos de un numero se arman aqui de derecha a izquierda */
+	private final char[] digitos;
+	private final int decimales;
+	/* 10^decimales */
+	private final long escala;
+
+	/* El estado de la trayectoria abierta, en unidades de 1/escala */
+	/* si ya hay un tramo abierto y si ya se escribio su "l" */
+	private boolean tramo;
+	private boolean relativo;
+	/* el ultimo punto escrito */
+	private long ux;
+	private long uy;
+	/* el punto que todavia puede resultar en la misma recta que los
+	   siguientes */
+	private boolean pendiente;
+	private long px;
+	private long py;
+	/* el color de la polilinea abierta y si ya tiene puntos */
+	private String color;
+	private boolean puntos;
+	/* si lo ultimo que se escribio fue un numero, el siguiente se separa
+	   salvo que empiece con '-' */
+	private boolean separa;
+
+	/**
+	* Construye un escritor de polilineas sobre la salida, con
+	* {@link #DECIMALES} decimales.
+	* @param salida donde se escribe el documento
+	*/
+	public EscritorSVG(Appendable salida) {
+		this(salida, Formato.POLILINEA, DECIMALES);
+	}
+
+	/**
+	* Construye un escritor sobre la salida.
+	* @param salida donde se escribe el documento
+	* @param formato como se escriben las lineas
+	* @param decimales cuantos decimales se escriben de cada coordenada,
+	*        entre 0 y {@link #MAXIMO_DECIMALES}
+	*/
+	public EscritorSVG(Appendable salida, Formato formato, int decimales) {
+		if (decimales < 0 || decimales > MAXIMO_DECIMALES)
+			throw new IllegalArgumentException("Decimales fuera de rango: " + decimales);
+		this.salida = salida;
+		this.formato = formato;
+		this.decimales = decimales;
+		this.bufer = new char[CAPACIDAD];
+		this.vista = CharBuffer.wrap(bufer);
+		this.digitos = new char[20];
+		long e = 1;
+		for (int i = 0; i < decimales; i++)
+			e *= 10;
+		this.escala = e;
+	}
+
+	/**
+	* Escribe la etiqueta de apertura del documento.
+	* @param ancho el ancho del documento
+	* @param alto el alto del documento
+	* @throws IOException si la salida falla
+	*/
+	public void inicia(int ancho, int alto) throws IOException {
+		texto("<svg width='");
+		entero(ancho);
+		texto("' height='");
+		entero(alto);
+		texto("'>");
+	}
+
+	/**
+	* Abre una polilinea, los puntos se agregan con {@link #punto}.
+	* @param color el color del trazo
+	* @throws IOException si la salida falla
+	*/
+	public void iniciaPolilinea(String color) throws IOException {
+		this.color = color;
+		this.puntos = false;
+		if (formato == Formato.POLILINEA) {
+			texto("<g><polyline fill='none' stroke='");
+			texto(color);
+			texto("' stroke-width='3'  points='");
+			return;
+		}
+		texto("<path fill='none' stroke='");
+		texto(color);
+		texto("' stroke-width='3' d='");
+		tramo = false;
+		pendiente = false;
+		separa = false;
+	}
+
+	/**
+	* Agrega un punto a la polilinea abierta.
+	* @param x la coordenada x en pixeles
+	* @param y la coordenada y en pixeles
+	* @throws IOException si la salida falla
+	*/
+	public void punto(double x, double y) throws IOException {
+		if (formato == Formato.POLILINEA) {
+			puntos = true;
+			numero(x);
+			caracter(',');
+			numero(y);
+			caracter(' ');
+			return;
+		}
+		if (!fijo(x) || !fijo(y)) {
+			cortaTramo();
+			return;
+		}
+		long qx = cuantiza(x);
+		long qy = cuantiza(y);
+		if (!tramo) {
+			/* un tramo nuevo empieza con un movimiento absoluto */
+			orden('M');
+			coordenada(qx);
+			coordenada(qy);
+			ux = qx;
+			uy = qy;
+			tramo = true;
+			relativo = false;
+			pendiente = false;
+			return;
+		}
+		if (!pendiente) {
+			if (qx != ux || qy != uy) {
+				px = qx;
+				py = qy;
+				pendiente = true;
+			}
+			return;
+		}
+		if (qx == px && qy == py)
+			return;
+		if (alineados(ux, uy, px, py, qx, qy)) {
+			/* el pendiente queda en medio, se recorre hasta el nuevo */
+			px = qx;
+			py = qy;
+			return;
+		}
+		escribePendiente();
+		px = qx;
+		py = qy;
+		pendiente = true;
+	}
+
+	/**
+	* Cierra la polilinea abierta.
+	* @throws IOException si la salida falla
+	*/
+	public void terminaPolilinea() throws IOException {
+		if (formato == Formato.POLILINEA) {
+			texto("'/></g>");
+			return;
+		}
+		cortaTramo();
+		texto("'/>");
+	}
+
+	/**
+	* Corta la linea abierta, el siguiente punto empieza otro tramo del
+	* mismo color. En una trayectoria es un movimiento nuevo y en el
+	* formato de polilineas es otra polilinea.
+	* @throws IOException si la salida falla
+	*/
+	public void corta() throws IOException {
+		if (formato == Formato.TRAYECTORIA) {
+			cortaTramo();
+			return;
+		}
+		if (!puntos)
+			return;
+		terminaPolilinea();
+		iniciaPolilinea(color);
+	}
+
+	/* Trayectorias */
+
+	/* nos dice si el numero se puede escribir con los decimales fijos */
+	private boolean fijo(double d) {
+		return !Double.isNaN(d) && Math.abs(d) * escala < MAXIMO_FIJO;
+	}
+
+	/* el numero en unidades de 1/escala, redondeado igual hacia los dos
+	   lados del cero */
+	private long cuantiza(double d) {
+		long v = Math.round(Math.abs(d) * escala);
+		return d < 0 ? -v : v;
+	}
+
+	/* nos dice si q sigue en la misma direccion que el paso de u a p */
+	private static boolean alineados(long ux, long uy, long px, long py, long qx, long qy) {
+		long ax = px - ux, ay = py - uy;
+		long bx = qx - px, by = qy - py;
+		if (Math.abs(ax) >= MAXIMO_CRUZADO || Math.abs(ay) >= MAXIMO_CRUZADO ||
+			Math.abs(bx) >= MAXIMO_CRUZADO || Math.abs(by) >= MAXIMO_CRUZADO)
+			return false;
+		return ax * by == ay * bx && ax * bx + ay * by > 0;
+	}
+
+	/* escribe el punto pendiente relativo al ultimo */
+	private void escribePendiente() throws IOException {
+		if (!relativo) {
+			orden('l');
+			relativo = true;
+		}
+		coordenada(px - ux);
+		coordenada(py - uy);
+		ux = px;
+		uy = py;
+		pendiente = false;
+	}
+
+	/* termina el tramo abierto, el siguiente punto empieza otro */
+	private void cortaTramo() throws IOException {
+		if (pendiente)
+			escribePendiente();
+		tramo = false;
+	}
+
+	private void orden(char c) throws IOException {
+		caracter(c);
+		separa = false;
+	}
+
+	/* un numero de la trayectoria en unidades de 1/escala, separado del
+	   anterior solo si hace falta y sin el cero antes del punto */
+	private void coordenada(long v) throws IOException {
+		if (v >= 0 && separa)
+			caracter(' ');
+		if (v < 0) {
+			caracter('-');
+			v = -v;
+		}
+		if (v >= escala || v == 0)
+			entero(v / escala);
+		fraccion(v % escala);
+		separa = true;
+	}
+
+	/**
+	* Escribe la etiqueta de cierre del documento y vacia el bufer, la
+	* salida no se cierra.
+	* @throws IOException si la salida falla
+	*/
+	public void termina() throws IOException {
+		texto("</svg>");
+		vacia();
+	}
+
+	/**
+	* Escribe un numero con a lo mas {@link #DECIMALES} decimales y sin
+	* ceros de sobra.
+	* @param d el numero a escribir
+	* @throws IOException si la salida falla
+	*/
+	public void numero(double d) throws IOException {
+		if (Double.isNaN(d) || Double.isInfinite(d) || Math.abs(d) >= MAXIMO_FIJO) {
+			texto(Double.toString(d));
+			return;
+		}
+		long v = Math.round(Math.abs(d) * escala);
+		if (d < 0 && v != 0)
+			caracter('-');
+		entero(v / escala);
+		fraccion(v % escala);
+	}
+
+	/* los decimales de un numero, sin ceros de sobra */
+	private void fraccion(long fraccion) throws IOException {
+		if (fraccion == 0)
+			return;
+		int n = decimales;
+		while (fraccion % 10 == 0) {
+			fraccion /= 10;
+			n--;
+		}
+		caracter('.');
+		int fin = digitos.length;
+		int i = fin;
+		for (int k = 0; k < n; k++) {
+			digitos[--i] = (char) ('0' + fraccion % 10);
+			fraccion /= 10;
+		}
+		caracteres(digitos, i, fin);
+	}
+
+	/* un entero no negativo */
+	private void entero(long v) throws IOException {
+		int fin = digitos.length;
+		int i = fin;
+		do {
+			digitos[--i] = (char) ('0' + v % 10);
+			v /= 10;
+		} while (v > 0);
+		caracteres(digitos, i, fin);
+	}
+
+	/* Escritura al bufer */
+
+	private void texto(String s) throws IOException {
+		int i = 0;
+		while (i < s.length()) {
+			if (usados == bufer.length)
+				vacia();
+			int n = Math.min(s.length() - i, bufer.length - usados);
+			s.getChars(i, i + n, bufer, usados);
+			usados += n;
+			i += n;
+		}
+	}
+
+	private void caracteres(char[] c, int inicio, int fin) throws IOException {
+		if (bufer.length - usados < fin - inicio)
+			vacia();
+		System.arraycopy(c, inicio, bufer, usados, fin - inicio);
+		usados += fin - inicio;
+	}
+
+	private void caracter(char c) throws IOException {
+		if (usados == bufer.length)
+			vacia();
+		bufer[usados++] = c;
+	}
+
+	/**
+	* Pasa a la salida lo que este en el bufer.
+	* @throws IOException si la salida falla
+	*/
+	public void vacia() throws IOException {
+		if (usados == 0)
+			return;
+		if (salida instanceof Writer)
+			((Writer) salida).write(bufer, 0, usados);
+		else
+			salida.append(vista, 0, usados);
+		usados = 0;
+	}
+}
@@ -1,17 +1,30 @@
 package mx.unam.ciencias.myp;
 
+/**
+* Clase base de los nodos de una expresion. Los nodos son inmutables:
+* todo su estado es de la instancia y se fija en el constructor, asi
+* que se pueden compartir entre expresiones y entre hilos.
+*/
 public class Funcion{
 
-	private static double x;
-	private static int tipo;
+	/* el tipo del nodo, cada subclase pasa el suyo */
+	private final int tipo;
+
+	Funcion(int tipo) {
+		this.tipo = tipo;
+	}
+
+	/* el tipo del nodo */
+	int tipo() {
+		return tipo;
+	}
 
 	/* Almacen de clases constantes*/
 	protected static class Constante extends Funcion{
-		private double x;
+		private final double x;
 		Constante(double x) {
+			super(0);
 			this.x = x;
-			super.x = x;
-			super.tipo = 0;
 		}
 
 		public double evalua() {
@@ -22,34 +35,39 @@ public class Funcion{
 			return "" + this.x;
 		}
 		@Override public boolean equals(Object o) {
-			if(o == null) 
+			if (!(o instanceof Funcion.Constante))
 				return false;
-			 @SuppressWarnings("unchecked")
-			 Funcion.Constante m = getClass().cast(o);
-			 if (m.x == this.x)
-			 	return true;
-			 return false;
-        	
+			Funcion.Constante m = (Funcion.Constante) o;
+			return Double.compare(m.x, this.x) == 0;
+		}
+
+		@Override public int hashCode() {
+			return Double.hashCode(x);
 		}
 	}
 
+	/* La variable, o su negativo cuando se escribio -x */
 	protected static class X extends Funcion {
-		X() {
-			super.x = Double.NEGATIVE_INFINITY;
-			super.tipo = 2;
+		private final boolean negativa;
 
+		X(boolean negativa) {
+			super(2);
+			this.negativa = negativa;
 		} 
 
+		/* si es -x */
+		boolean esNegativa() {
+			return negativa;
+		}
+
 		@Override public String toString() {
-			return "x";
+			return negativa ? "-x" : "x";
 		}
 	}
 
 	protected static class P_I extends Funcion {
 		P_I() {
-			super.x = Double.NEGATIVE_INFINITY;
-			super.tipo = 3;
-
+			super(3);
 		} 
 
 		@Override public String toString() {
@@ -59,8 +77,7 @@ public class Funcion{
 
 	protected static class P_F extends Funcion {
 		P_F() {
-			super.tipo = 4;
-			super.x = Double.NEGATIVE_INFINITY;
+			super(4);
 		} 
 
 		@Override public String toString() {
@@ -70,51 +87,20 @@ public class Funcion{
 
 	/** Subclase de Funciones para construir csas*/
 	protected static class Trigonometrica extends Funcion {
-		private int seleccion;
+		private final int seleccion;
 
 		Trigonometrica( int seleccion) {
-			super.tipo = 10 + seleccion;
+			super(10 + seleccion);
 			this.seleccion = seleccion;
 		}
 
 		public double evalua(double x) {
-			double r = 0;
-			switch (seleccion) {
-				/* Seno */
-				case 1:
-					r = Math.sin(x);
-				break;
-				/* Coseno */
-				case 2:
-					r = Math.cos(x);
-				break;
-				/* Tangente */
-				case 3:
-					r = Math.tan(x);
-				break;
-				/* Secante */
-				case 4:
-					if(Math.cos(x) != 0)
-						r = 1 / Math.cos(x);
-					else 
-						r = Double.POSITIVE_INFINITY;
-				break;
-				/* Cosecante */
-				case 5:
-					if(Math.sin(x) != 0)
-						r = 1 / Math.sin(x);
-					else 
-						r = Double.POSITIVE_INFINITY;
-				break;
-				/* Cotangente */
-				case 6:
-					if(Math.tan(x) != 0)
-						r = 1 / Math.tan(x);
-					else 
-						r = Double.POSITIVE_INFINITY;
-				break;
-			}
-			return r;
+			return Funcion.trigonometrica(seleccion, x);
+		}
+
+		/* el indice de la funcion, 1 = sen ... 6 = ctg */
+		int seleccion() {
+			return seleccion;
 		}
 
 		@Override public String toString() {
@@ -126,39 +112,31 @@ public class Funcion{
 
 	protected static class Algebraica extends Funcion{
 
-		private double x;
-		private char seleccion;
+		private final char seleccion;
 
 		Algebraica(char seleccion) {
+			super((int) seleccion);
 			this.seleccion = seleccion;
-			super.tipo = (int) seleccion;
-
 		}
 
 		public double evalua(double x, double y) {
 			switch (seleccion) {
 				case '*':
-					return  x * y;
-				
 				case '-':
-					return  x - y;
-				
 				case '+':
-					return 	x + y;
-				
 				case '/':
-					if(y != 0) 
-						return x/y;
-					else
-						return Double.POSITIVE_INFINITY;
-				
 				case '^':
-					return Math.pow(x,y);
+					return Funcion.algebraica(seleccion, x, y);
 			}
 			d("No existe la funcion, te devuelvo 0");
 			return 0;
 		}
 
+		/* el simbolo del operador */
+		char seleccion() {
+			return seleccion;
+		}
+
 		@Override public String toString() {
 			return "" + seleccion;
 		}
@@ -166,6 +144,92 @@ public class Funcion{
 
 
 
+	/**
+	* Evalua la funcion trigonometrica con indice <i>seleccion</i>, es la
+	* misma semantica para el arbol y para los programas compilados.
+	*/
+	static double trigonometrica(int seleccion, double x) {
+		switch (seleccion) {
+			/* Seno */
+			case 1:
+				return Math.sin(x);
+			/* Coseno */
+			case 2:
+				return Math.cos(x);
+			/* Tangente */
+			case 3:
+				return Math.tan(x);
+			/* Secante */
+			case 4:
+				return secante(x);
+			/* Cosecante */
+			case 5:
+				return cosecante(x);
+			/* Cotangente */
+			case 6:
+				return cotangente(x);
+		}
+		return 0;
+	}
+
+	/**
+	* Evalua el operador <i>seleccion</i> sobre <i>x</i> y <i>y</i>
+	*/
+	static double algebraica(char seleccion, double x, double y) {
+		switch (seleccion) {
+			case '*':
+				return  x * y;
+			case '-':
+				return  x - y;
+			case '+':
+				return 	x + y;
+			case '/':
+				return divide(x, y);
+			case '^':
+				return Math.pow(x,y);
+		}
+		return 0;
+	}
+
+	/* division que devuelve infinito en lugar de dividir entre cero */
+	static double divide(double x, double y) {
+		if(y != 0) 
+			return x/y;
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/* x^n por cuadrados sucesivos, para exponentes enteros pequeños */
+	static double potenciaEntera(double x, int n) {
+		double base = n < 0 ? 1 / x : x;
+		int e = Math.abs(n);
+		double r = 1;
+		while (e > 0) {
+			if ((e & 1) == 1)
+				r *= base;
+			base *= base;
+			e >>= 1;
+		}
+		return r;
+	}
+
+	static double secante(double x) {
+		if(Math.cos(x) != 0)
+			return 1 / Math.cos(x);
+		return Double.POSITIVE_INFINITY;
+	}
+
+	static double cosecante(double x) {
+		if(Math.sin(x) != 0)
+			return 1 / Math.sin(x);
+		return Double.POSITIVE_INFINITY;
+	}
+
+	static double cotangente(double x) {
+		if(Math.tan(x) != 0)
+			return 1 / Math.tan(x);
+		return Double.POSITIVE_INFINITY;
+	}
+
 	public void d(Object o) {
 		System.out.println(o);
 	}
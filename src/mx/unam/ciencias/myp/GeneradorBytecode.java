@@ -0,0 +1,303 @@
+package mx.unam.ciencias.myp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+* <p>Clase que traduce un {@link Programa} a una clase de la JVM que
+* implementa {@link DoubleUnaryOperator}.</p>
+* <p>Como el programa ya esta en notacion postfija, cada instruccion
+* corresponde directamente a una instruccion de la pila de la JVM, asi
+* que el metodo generado es aritmetica en linea recta que el JIT puede
+* incluir y optimizar. La clase se define como clase oculta, por lo que
+* se descarga en cuanto deja de usarse.</p>
+*/
+public class GeneradorBytecode {
+
+	/* los metodos de mas de este tamaño no los compila el JIT */
+	static final int LIMITE_METODO = 8000;
+
+	/* el nombre que lleva la clase generada, debe vivir en nuestro paquete */
+	private static final String NOMBRE =
+		Programa.class.getPackage().getName().replace('.', '/') + "/ExpresionCompilada";
+	private static final String FUNCION = Funcion.class.getName().replace('.', '/');
+
+	/* la alberca de constantes de la clase que se genera */
+	private ByteArrayOutputStream alberca;
+	private DataOutputStream salidaAlberca;
+	private HashMap<String, Integer> indices;
+	private int siguiente;
+
+	private GeneradorBytecode() {
+		alberca = new ByteArrayOutputStream();
+		salidaAlberca = new DataOutputStream(alberca);
+		indices = new HashMap<>();
+		siguiente = 1;
+	}
+
+	/**
+	* Genera y carga una clase que evalua el programa.
+	* @param programa el programa a traducir
+	* @return el operador que evalua el programa
+	* @throws IllegalStateException si el programa es demasiado grande
+	*         o la JVM no permite definir la clase.
+	*/
+	public static DoubleUnaryOperator genera(Programa programa) {
+		byte[] clase;
+		try {
+			clase = new GeneradorBytecode().clase(programa);
+		} catch (IOException ioe) {
+			throw new IllegalStateException(ioe);
+		}
+		try {
+			MethodHandles.Lookup oculta = MethodHandles.lookup().defineHiddenClass(clase, true);
+			MethodHandle constructor = oculta.findConstructor(oculta.lookupClass(),
+															MethodType.methodType(void.class));
+			return (DoubleUnaryOperator) constructor.invoke();
+		} catch (Throwable t) {
+			throw new IllegalStateException("No se pudo definir la clase", t);
+		}
+	}
+
+	/* escribe el archivo de clase completo */
+	private byte[] clase(Programa programa) throws IOException {
+		int object = clase("java/lang/Object");
+		int estaClase = clase(NOMBRE);
+		int interfaz = clase("java/util/function/DoubleUnaryOperator");
+		int init = utf8("<init>");
+		int vacio = utf8("()V");
+		int superInit = metodo(object, "<init>", "()V");
+		int code = utf8("Code");
+		int aplica = utf8("applyAsDouble");
+		int firma = utf8("(D)D");
+		byte[] cuerpo = cuerpo(programa);
+		if (cuerpo.length > LIMITE_METODO)
+			throw new IllegalStateException("Programa demasiado grande");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream salida = new DataOutputStream(bytes);
+		salida.writeInt(0xCAFEBABE);
+		/* Java 8, asi no se necesitan marcos de pila y no hay saltos */
+		salida.writeShort(0);
+		salida.writeShort(52);
+		salida.writeShort(siguiente);
+		salidaAlberca.flush();
+		alberca.writeTo(salida);
+		/* ACC_FINAL | ACC_SUPER */
+		salida.writeShort(0x0030);
+		salida.writeShort(estaClase);
+		salida.writeShort(object);
+		salida.writeShort(1);
+		salida.writeShort(interfaz);
+		/* sin campos */
+		salida.writeShort(0);
+		salida.writeShort(2);
+
+		/* public ExpresionCompilada() { super(); } */
+		byte[] constructor = {
+			0x2a,                       // aload_0
+			(byte) 0xb7,                // invokespecial
+			(byte) (superInit >> 8), (byte) superInit,
+			(byte) 0xb1                 // return
+		};
+		escribeMetodo(salida, init, vacio, code, 1, 1, constructor);
+		/* public double applyAsDouble(double x) */
+		/* las ranuras de las subexpresiones comunes son variables locales */
+		escribeMetodo(salida, aplica, firma, code, 2 * programa.profundidad() + 4,
+					  3 + 2 * programa.ranuras(), cuerpo);
+		/* sin atributos */
+		salida.writeShort(0);
+		salida.flush();
+		return bytes.toByteArray();
+	}
+
+	private void escribeMetodo(DataOutputStream salida, int nombre, int firma, int code,
+							   int pila, int locales, byte[] cuerpo) throws IOException {
+		/* ACC_PUBLIC */
+		salida.writeShort(0x0001);
+		salida.writeShort(nombre);
+		salida.writeShort(firma);
+		salida.writeShort(1);
+		salida.writeShort(code);
+		salida.writeInt(12 + cuerpo.length);
+		salida.writeShort(pila);
+		salida.writeShort(locales);
+		salida.writeInt(cuerpo.length);
+		salida.write(cuerpo);
+		/* sin excepciones ni atributos */
+		salida.writeShort(0);
+		salida.writeShort(0);
+	}
+
+	/* traduce cada instruccion del programa a instrucciones de la JVM */
+	private byte[] cuerpo(Programa programa) throws IOException {
+		int[] codigo = programa.codigo();
+		double[] constantes = programa.constantes();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream salida = new DataOutputStream(bytes);
+		for (int i = 0; i < codigo.length; i++) {
+			switch (codigo[i]) {
+				case Programa.CONSTANTE:
+					double c = constantes[codigo[++i]];
+					if (Double.doubleToRawLongBits(c) == 0L) {
+						salida.writeByte(0x0e);         // dconst_0
+					} else if (c == 1.0) {
+						salida.writeByte(0x0f);         // dconst_1
+					} else {
+						salida.writeByte(0x14);         // ldc2_w
+						salida.writeShort(real(c));
+					}
+				break;
+				case Programa.X:
+					salida.writeByte(0x27);             // dload_1
+				break;
+				case Programa.MENOS_X:
+					salida.writeByte(0x27);             // dload_1
+					salida.writeByte(0x77);             // dneg
+				break;
+				case Programa.SUMA:
+					salida.writeByte(0x63);             // dadd
+				break;
+				case Programa.RESTA:
+					salida.writeByte(0x67);             // dsub
+				break;
+				case Programa.PRODUCTO:
+					salida.writeByte(0x6b);             // dmul
+				break;
+				case Programa.DIVISION:
+					invoca(salida, FUNCION, "divide", "(DD)D");
+				break;
+				case Programa.POTENCIA:
+					invoca(salida, "java/lang/Math", "pow", "(DD)D");
+				break;
+				case Programa.SENO:
+					invoca(salida, "java/lang/Math", "sin", "(D)D");
+				break;
+				case Programa.COSENO:
+					invoca(salida, "java/lang/Math", "cos", "(D)D");
+				break;
+				case Programa.TANGENTE:
+					invoca(salida, "java/lang/Math", "tan", "(D)D");
+				break;
+				case Programa.SECANTE:
+					invoca(salida, FUNCION, "secante", "(D)D");
+				break;
+				case Programa.COSECANTE:
+					invoca(salida, FUNCION, "cosecante", "(D)D");
+				break;
+				case Programa.COTANGENTE:
+					invoca(salida, FUNCION, "cotangente", "(D)D");
+				break;
+				case Programa.POTENCIA_ENTERA:
+					int n = codigo[++i];
+					if (n == 2) {
+						salida.writeByte(0x5c);         // dup2
+						salida.writeByte(0x6b);         // dmul
+					} else if (n == 3) {
+						salida.writeByte(0x5c);         // dup2
+						salida.writeByte(0x5c);         // dup2
+						salida.writeByte(0x6b);         // dmul
+						salida.writeByte(0x6b);         // dmul
+					} else {
+						salida.writeByte(0x10);         // bipush
+						salida.writeByte(n);
+						invoca(salida, FUNCION, "potenciaEntera", "(DI)D");
+					}
+				break;
+				case Programa.GUARDA:
+					salida.writeByte(0x5c);             // dup2
+					local(salida, 0x39, codigo[++i]);   // dstore
+				break;
+				case Programa.CARGA:
+					local(salida, 0x18, codigo[++i]);   // dload
+				break;
+			}
+		}
+		salida.writeByte(0xaf);                         // dreturn
+		salida.flush();
+		return bytes.toByteArray();
+	}
+
+	/* instruccion sobre la variable local de la ranura, con wide si no cabe en un byte */
+	private void local(DataOutputStream salida, int instruccion, int ranura) throws IOException {
+		int indice = 3 + 2 * ranura;
+		if (indice > 0xff) {
+			salida.writeByte(0xc4);                     // wide
+			salida.writeByte(instruccion);
+			salida.writeShort(indice);
+		} else {
+			salida.writeByte(instruccion);
+			salida.writeByte(indice);
+		}
+	}
+
+	private void invoca(DataOutputStream salida, String clase, String nombre, String firma)
+			throws IOException {
+		salida.writeByte(0xb8);                         // invokestatic
+		salida.writeShort(metodo(clase(clase), nombre, firma));
+	}
+
+	/* Entradas de la alberca de constantes, cada una se escribe una sola vez */
+
+	private int utf8(String s) throws IOException {
+		Integer i = indices.get("U" + s);
+		if (i != null)
+			return i;
+		salidaAlberca.writeByte(1);
+		salidaAlberca.writeUTF(s);
+		return registra("U" + s, 1);
+	}
+
+	private int clase(String nombre) throws IOException {
+		Integer i = indices.get("C" + nombre);
+		if (i != null)
+			return i;
+		int n = utf8(nombre);
+		salidaAlberca.writeByte(7);
+		salidaAlberca.writeShort(n);
+		return registra("C" + nombre, 1);
+	}
+
+	private int metodo(int clase, String nombre, String firma) throws IOException {
+		String llave = "M" + clase + "." + nombre + firma;
+		Integer i = indices.get(llave);
+		if (i != null)
+			return i;
+		int n = utf8(nombre);
+		int f = utf8(firma);
+		salidaAlberca.writeByte(12);
+		salidaAlberca.writeShort(n);
+		salidaAlberca.writeShort(f);
+		int nombreYTipo = registra("N" + llave, 1);
+		salidaAlberca.writeByte(10);
+		salidaAlberca.writeShort(clase);
+		salidaAlberca.writeShort(nombreYTipo);
+		return registra(llave, 1);
+	}
+
+	private int real(double d) throws IOException {
+		String llave = "D" + Double.doubleToRawLongBits(d);
+		Integer i = indices.get(llave);
+		if (i != null)
+			return i;
+		salidaAlberca.writeByte(6);
+		salidaAlberca.writeDouble(d);
+		/* los double ocupan dos lugares en la alberca */
+		return registra(llave, 2);
+	}
+
+	private int registra(String llave, int lugares) {
+		if (siguiente + lugares > 0xffff)
+			throw new IllegalStateException("Programa demasiado grande");
+		int i = siguiente;
+		indices.put(llave, i);
+		siguiente += lugares;
+		return i;
+	}
+}
@@ -0,0 +1,162 @@
+package mx.unam.ciencias.myp;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+* <p>Clase que traduce un {@link Programa} a un arbol de cierres
+* (<i>lambdas</i>) anidados.</p>
+* <p>Cada nodo del arbol ya tiene resuelto su operador, asi que no hay
+* que decidir en cada evaluacion que operacion hacer como en
+* {@link Funcion.Algebraica#evalua} o {@link Funcion.Trigonometrica#evalua}.
+* Los operandos constantes se capturan como valores, un producto como
+* <code>(* x 2)</code> queda en un solo cierre. Es mucho mas barato de
+* construir que una clase generada por {@link GeneradorBytecode}, por
+* eso es la opcion para las expresiones de vida corta.</p>
+* <p>Los cierres no guardan estado, asi que un nodo compartido del
+* {@link GrafoExpresion} se vuelve a evaluar en cada uso.</p>
+*/
+public class GeneradorCierres {
+
+	private GeneradorCierres() {}
+
+	/**
+	* Construye el arbol de cierres del programa.
+	* @param programa el programa a traducir
+	* @return el operador que evalua el programa
+	*/
+	public static DoubleUnaryOperator genera(Programa programa) {
+		int[] codigo = programa.codigo();
+		double[] constantes = programa.constantes();
+		/* simulamos la pila del programa, pero con cierres */
+		DoubleUnaryOperator[] pila = new DoubleUnaryOperator[Math.max(programa.profundidad(), 1)];
+		/* si el cierre en la pila es una constante, su valor; NaN si no */
+		double[] valores = new double[pila.length];
+		/* los cierres de los nodos compartidos */
+		DoubleUnaryOperator[] ranuras = new DoubleUnaryOperator[programa.ranuras()];
+		int tope = -1;
+		for (int i = 0; i < codigo.length; i++) {
+			int op = codigo[i];
+			switch (op) {
+				case Programa.CONSTANTE:
+					final double c = constantes[codigo[++i]];
+					pila[++tope] = x -> c;
+					valores[tope] = c;
+				break;
+				case Programa.X:
+					pila[++tope] = x -> x;
+					valores[tope] = Double.NaN;
+				break;
+				case Programa.MENOS_X:
+					pila[++tope] = x -> -x;
+					valores[tope] = Double.NaN;
+				break;
+				case Programa.SUMA:
+				case Programa.RESTA:
+				case Programa.PRODUCTO:
+				case Programa.DIVISION:
+				case Programa.POTENCIA:
+					tope--;
+					pila[tope] = binario(op, pila[tope], pila[tope + 1], valores[tope], valores[tope + 1]);
+					valores[tope] = Double.NaN;
+				break;
+				case Programa.GUARDA:
+					ranuras[codigo[++i]] = pila[tope];
+				break;
+				case Programa.CARGA:
+					pila[++tope] = ranuras[codigo[++i]];
+					valores[tope] = Double.NaN;
+				break;
+				case Programa.POTENCIA_ENTERA:
+					pila[tope] = potencia(pila[tope], codigo[++i]);
+					valores[tope] = Double.NaN;
+				break;
+				default:
+					pila[tope] = unario(op, pila[tope]);
+					valores[tope] = Double.NaN;
+			}
+		}
+		return pila[0];
+	}
+
+	/* cierre para un operador, se especializa si algun operando es una
+	   constante, ca y cb son NaN cuando el operando no es constante */
+	private static DoubleUnaryOperator binario(int op, DoubleUnaryOperator a, DoubleUnaryOperator b,
+											   double ca, double cb) {
+		if (!Double.isNaN(cb)) {
+			switch (op) {
+				case Programa.SUMA:
+					return x -> a.applyAsDouble(x) + cb;
+				case Programa.RESTA:
+					return x -> a.applyAsDouble(x) - cb;
+				case Programa.PRODUCTO:
+					return x -> a.applyAsDouble(x) * cb;
+				case Programa.DIVISION:
+					return x -> Funcion.divide(a.applyAsDouble(x), cb);
+				case Programa.POTENCIA:
+					return x -> Math.pow(a.applyAsDouble(x), cb);
+			}
+		}
+		if (!Double.isNaN(ca)) {
+			switch (op) {
+				case Programa.SUMA:
+					return x -> ca + b.applyAsDouble(x);
+				case Programa.RESTA:
+					return x -> ca - b.applyAsDouble(x);
+				case Programa.PRODUCTO:
+					return x -> ca * b.applyAsDouble(x);
+				case Programa.DIVISION:
+					return x -> Funcion.divide(ca, b.applyAsDouble(x));
+				case Programa.POTENCIA:
+					return x -> Math.pow(ca, b.applyAsDouble(x));
+			}
+		}
+		switch (op) {
+			case Programa.SUMA:
+				return x -> a.applyAsDouble(x) + b.applyAsDouble(x);
+			case Programa.RESTA:
+				return x -> a.applyAsDouble(x) - b.applyAsDouble(x);
+			case Programa.PRODUCTO:
+				return x -> a.applyAsDouble(x) * b.applyAsDouble(x);
+			case Programa.DIVISION:
+				return x -> Funcion.divide(a.applyAsDouble(x), b.applyAsDouble(x));
+			default:
+				return x -> Math.pow(a.applyAsDouble(x), b.applyAsDouble(x));
+		}
+	}
+
+	/* cierre para una potencia entera, los cuadrados y cubos en linea */
+	private static DoubleUnaryOperator potencia(DoubleUnaryOperator a, int n) {
+		switch (n) {
+			case 2:
+				return x -> {
+					double v = a.applyAsDouble(x);
+					return v * v;
+				};
+			case 3:
+				return x -> {
+					double v = a.applyAsDouble(x);
+					return v * v * v;
+				};
+			default:
+				return x -> Funcion.potenciaEntera(a.applyAsDouble(x), n);
+		}
+	}
+
+	/* cierre para una funcion trigonometrica */
+	private static DoubleUnaryOperator unario(int op, DoubleUnaryOperator a) {
+		switch (op) {
+			case Programa.SENO:
+				return x -> Math.sin(a.applyAsDouble(x));
+			case Programa.COSENO:
+				return x -> Math.cos(a.applyAsDouble(x));
+			case Programa.TANGENTE:
+				return x -> Math.tan(a.applyAsDouble(x));
+			case Programa.SECANTE:
+				return x -> Funcion.secante(a.applyAsDouble(x));
+			case Programa.COSECANTE:
+				return x -> Funcion.cosecante(a.applyAsDouble(x));
+			default:
+				return x -> Funcion.cotangente(a.applyAsDouble(x));
+		}
+	}
+}
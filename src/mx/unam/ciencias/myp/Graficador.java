@@ -4,15 +4,16 @@ import mx.unam.ciencias.edd.Lista;
 
 import java.io.IOException;
 import java.io.File;
-import java.io.PrintWriter;
 import java.net.URL;
-import javax.imageio.ImageIO;
 import javax.swing.*; 
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.filechooser.FileFilter;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.awt.event.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class Graficador extends JFrame {
@@ -52,7 +53,9 @@ public class Graficador extends JFrame {
         ancho = 900;
         alto = 600;
         ploter = new Trazador(ancho+1, alto);
-        panelGrafica = new DibujaGUI(ploter.listaPoligonos(),0,0);
+        /* con lineas de 3 pixeles una decima de pixel basta */
+        ploter.setFormatoSVG(EscritorSVG.Formato.TRAYECTORIA, 1);
+        panelGrafica = new DibujaGUI(new Lista<Lista<Polygon>>(),0,0);
         funciones = new Lista<>();
 
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -90,11 +93,8 @@ public class Graficador extends JFrame {
                     x2 = s2.getNumber().doubleValue();
                     y1 = t1.getNumber().doubleValue();
                     y2 = t2.getNumber().doubleValue();
-                  /* actualizamos las medidas por si se redimensiono  */
-                    ploter.setMedidasYrango(ancho, alto,x1,x2,y1,y2);
-                    ploter.agregaFuncion(f.toLowerCase());
-                    panelGrafica = new DibujaGUI(ploter.listaPoligonos(),ancho, alto);
-                    contenedorPanelGrafica.setViewportView(panelGrafica);
+                  /* el trazo se hace en otro hilo, con las medidas por si se redimensiono */
+                    trazados.execute(new Trazado(f, ancho, alto, x1, x2, y1, y2));
                     textoFuncion.setText("");
 
                 } catch(MalFormedFunctionException mffe) {
@@ -112,9 +112,8 @@ public class Graficador extends JFrame {
         botonLimpiar.setText("Limpiar");
         botonLimpiar.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                ploter.limpiar();
                 funciones.limpia();
-                contenedorPanelGrafica.setViewportView(new DibujaGUI(new Lista<Polygon>(),300,300));
+                trazados.execute(new Trazado(null, 300, 300, 0, 0, 0, 0));
             }
         });
 
@@ -147,37 +146,40 @@ public class Graficador extends JFrame {
         guardarPNG.setText("2 PNG");
         guardarPNG.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                BufferedImage imagen = new BufferedImage(panelGrafica.getWidth(), panelGrafica.getWidth(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D cg = imagen.createGraphics();
-                panelGrafica.paintAll(cg);
-                try {
-                        File salida = mostrarArchivador( new FileNameExtensionFilter("Portable Network Graphic (*.png)", "png"));
-                        if (ImageIO.write(imagen, "png", salida))
-                        {
-                            JOptionPane.showMessageDialog(null,"imagen guardada");
-                        }
-                } catch (Exception e) {
-                            JOptionPane.showMessageDialog(null,"No se pudo guardar la imagen");
-
-                }
+                File salida = mostrarArchivador( new FileNameExtensionFilter("Portable Network Graphic (*.png)", "png"));
+                if (salida == null)
+                    return;
+                /* se dibuja en el hilo de los trazos con las medidas de la grafica */
+                trazados.execute(() -> {
+                    String mensaje = "imagen guardada";
+                    try {
+                        ploter.guardaPNG(salida);
+                    } catch (IOException e) {
+                        mensaje = "No se pudo guardar la imagen";
+                    }
+                    final String m = mensaje;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, m));
+                });
             }
         });
 
         guardarSVG.setText("2 SVG");
         guardarSVG.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                File archivo = mostrarArchivador( new FileNameExtensionFilter("ScalarVectorGraphic (*.svg)", "svg"));
+                File archivo = mostrarArchivador( new FileNameExtensionFilter("ScalarVectorGraphic (*.svg, *.svgz)", "svg", "svgz"));
                 if(archivo == null)
                     return;
-                try {
-                    PrintWriter salida = new PrintWriter(archivo);
-                    salida.println(ploter.getSVG());
-                    salida.close();
-                    JOptionPane.showMessageDialog(null, "Imagen guardada :)");
-
-                } catch(Exception e) {
-                    JOptionPane.showMessageDialog(null, "No se pudo guardar la imagen ");
-                }
+                /* se escribe en el hilo de los trazos, despues del ultimo que se pidio */
+                trazados.execute(() -> {
+                    String mensaje = "Imagen guardada :)";
+                    try {
+                        ploter.guardaSVG(archivo);
+                    } catch(IOException e) {
+                        mensaje = "No se pudo guardar la imagen ";
+                    }
+                    final String m = mensaje;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, m));
+                });
             }
         });
 
@@ -279,6 +281,80 @@ public class Graficador extends JFrame {
     }                        
 
                            
+    /**
+    * Trazo que se hace fuera del hilo de eventos, en dos pasadas: primero
+    * un muestreo uniforme que es barato y despues el adaptativo. Cada
+    * pasada se publica en el panel en cuanto termina. Los trazos se
+    * ejecutan en orden en un solo hilo; si ya se pidio otro, este deja
+    * de ser vigente, no hace la segunda pasada y lo que publique se
+    * ignora. La primera pasada siempre se hace porque es la que agrega
+    * la funcion al trazador.
+    */
+    private class Trazado extends SwingWorker<Void, Lista<Lista<Polygon>>> {
+        /* la funcion por agregar, o null si hay que limpiar */
+        private String funcion;
+        private int ancho, alto;
+        private double x1, x2, y1, y2;
+        private long generacion;
+
+        Trazado(String funcion, int ancho, int alto, double x1, double x2, double y1, double y2) {
+            this.funcion = funcion;
+            this.ancho = ancho;
+            this.alto = alto;
+            this.x1 = x1;
+            this.x2 = x2;
+            this.y1 = y1;
+            this.y2 = y2;
+            this.generacion = ++ultimaGeneracion;
+        }
+
+        /* nos dice si no se ha pedido otro trazo despues de este */
+        private boolean vigente() {
+            return generacion == ultimaGeneracion;
+        }
+
+        @Override protected Void doInBackground() throws MalFormedFunctionException {
+            if (funcion == null) {
+                ploter.limpiar();
+                publish(new Lista<Lista<Polygon>>());
+                return null;
+            }
+            ploter.setMuestreo(Trazador.Muestreo.UNIFORME);
+            ploter.setMedidasYrango(ancho, alto, x1, x2, y1, y2);
+            ploter.agregaFuncion(funcion.toLowerCase());
+            publish(ploter.listaPoligonos().copia());
+            if (!vigente())
+                return null;
+            ploter.setMuestreo(Trazador.Muestreo.ADAPTATIVO);
+            ploter.retraza();
+            publish(ploter.listaPoligonos().copia());
+            return null;
+        }
+
+        /* solo se dibuja la ultima pasada que llego */
+        @Override protected void process(List<Lista<Lista<Polygon>>> pasadas) {
+            if (!vigente())
+                return;
+            panelGrafica = new DibujaGUI(pasadas.get(pasadas.size() - 1), ancho, alto);
+            contenedorPanelGrafica.setViewportView(panelGrafica);
+        }
+
+        @Override protected void done() {
+            try {
+                get();
+            } catch (ExecutionException ee) {
+                if (funcion != null)
+                    funciones.elimina(funcion);
+                if (ee.getCause() instanceof MalFormedFunctionException)
+                    JOptionPane.showMessageDialog(null, ee.getCause().getMessage());
+                else
+                    JOptionPane.showMessageDialog(null, "Mi culpa :/");
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
    /**
    * Funcion que muestra un selecctor de archivos para guardar la imagen :)
    */
@@ -295,11 +371,10 @@ public class Graficador extends JFrame {
         }
         
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, no se usan; para graficar por
+     *        lotes esta {@link Lote#main}
      */
     public static void main(String args[]) {
- 
-
         /* Create and display the form */
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
@@ -336,6 +411,14 @@ public class Graficador extends JFrame {
     private JTextField textoFuncion;
     JFileChooser guardaArchivo;
     private Trazador ploter;
+    /* los trazos se hacen en orden, uno a la vez, fuera del hilo de eventos */
+    private final ExecutorService trazados = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "graficador");
+        t.setDaemon(true);
+        return t;
+    });
+    /* la generacion del ultimo trazo que se pidio */
+    private volatile long ultimaGeneracion;
     private Lista<String> funciones;
     private int ancho;
     private int alto;
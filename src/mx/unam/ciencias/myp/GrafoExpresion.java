@@ -0,0 +1,170 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.ArbolDerivacion;
+import mx.unam.ciencias.edd.VerticeArbolBinario;
+import java.util.HashMap;
+
+/**
+* <p>Clase que convierte un {@link ArbolDerivacion} de funciones en un
+* grafo dirigido aciclico donde los subarboles que son iguales
+* estructuralmente comparten un solo nodo.</p>
+* <p>Cada nodo se construye a traves de una tabla de nodos ya vistos
+* (<i>hash-consing</i>), asi en <code>(+ (sin (* 2 x)) (* (sin (* 2 x))
+* (sin (* 2 x))))</code> el seno existe una sola vez con tres usos y el
+* {@link Programa} lo evalua una sola vez por cada x.</p>
+*/
+public class GrafoExpresion {
+
+	/** Un nodo del grafo, inmutable una vez que se interna */
+	static class Nodo {
+		/* el codigo de operacion del Programa que corresponde al nodo */
+		final int operacion;
+		/* el valor si es una constante */
+		final double valor;
+		final Nodo izquierdo;
+		final Nodo derecho;
+		/* cuantos padres apuntan a este nodo */
+		int usos;
+
+		Nodo(int operacion, double valor, Nodo izquierdo, Nodo derecho) {
+			this.operacion = operacion;
+			this.valor = valor;
+			this.izquierdo = izquierdo;
+			this.derecho = derecho;
+		}
+
+		/** Nos dice si el nodo es una hoja: constante, x o -x */
+		boolean esHoja() {
+			return izquierdo == null;
+		}
+
+		/* los hijos ya estan internados, asi que se comparan por referencia */
+		@Override public boolean equals(Object o) {
+			if (!(o instanceof Nodo))
+				return false;
+			Nodo n = (Nodo) o;
+			return operacion == n.operacion &&
+				Double.doubleToLongBits(valor) == Double.doubleToLongBits(n.valor) &&
+				izquierdo == n.izquierdo && derecho == n.derecho;
+		}
+
+		@Override public int hashCode() {
+			int h = 31 * operacion + Double.hashCode(valor);
+			h = 31 * h + System.identityHashCode(izquierdo);
+			return 31 * h + System.identityHashCode(derecho);
+		}
+	}
+
+	/* la tabla de nodos internados */
+	private HashMap<Nodo, Nodo> nodos;
+	private Nodo raiz;
+
+	/**
+	* Construye el grafo a partir del arbol de derivacion.
+	* @param arbol el arbol que genero el {@link Compilador}
+	*/
+	public GrafoExpresion(ArbolDerivacion<Muestra<Funcion>> arbol) {
+		nodos = new HashMap<>();
+		if (arbol == null || arbol.getElementos() == 0)
+			raiz = interna(new Nodo(Programa.CONSTANTE, Double.NaN, null, null));
+		else
+			raiz = construye(arbol.raiz());
+	}
+
+	/* construye el grafo de las hojas hacia la raiz */
+	private Nodo construye(VerticeArbolBinario<Muestra<Funcion>> vertice) {
+		Muestra<Funcion> m = vertice.get();
+		switch (m.tipo()) {
+			case NUMERO:
+				double c = ((Funcion.Constante) m.get()).evalua();
+				return interna(new Nodo(Programa.CONSTANTE, c, null, null));
+			case VARIABLE:
+				int op = ((Funcion.X) m.get()).esNegativa() ? Programa.MENOS_X : Programa.X;
+				return interna(new Nodo(op, 0, null, null));
+			case OPERADOR:
+				Nodo izquierdo = construye(vertice.getIzquierdo());
+				Nodo derecho = construye(vertice.getDerecho());
+				int operador = Programa.operador(((Funcion.Algebraica) m.get()).seleccion());
+				return interna(new Nodo(operador, 0, izquierdo, derecho));
+			case FUNCION:
+				Nodo argumento = construye(vertice.getIzquierdo());
+				int funcion = Programa.SENO - 1 + ((Funcion.Trigonometrica) m.get()).seleccion();
+				return interna(new Nodo(funcion, 0, argumento, null));
+			default:
+				throw new IllegalArgumentException("No se puede compilar " + m);
+		}
+	}
+
+	/* devuelve el nodo igual que ya existia, o registra el nuevo; cada
+	   nodo devuelto cuenta como un uso */
+	private Nodo interna(Nodo nodo) {
+		Nodo existente = nodos.get(nodo);
+		if (existente == null) {
+			nodos.put(nodo, nodo);
+			nodo.usos = 1;
+			return nodo;
+		}
+		/* el candidato se descarta, sus hijos ya los usaba el existente */
+		if (nodo.izquierdo != null)
+			nodo.izquierdo.usos--;
+		if (nodo.derecho != null)
+			nodo.derecho.usos--;
+		existente.usos++;
+		return existente;
+	}
+
+	/* la raiz del grafo */
+	Nodo raiz() {
+		return raiz;
+	}
+
+	/**
+	* Devuelve la forma canonica de la expresion en notacion prefija,
+	* los operandos de la suma y el producto se ordenan para que el orden
+	* en que se escribieron no importe.
+	* @return la forma canonica de la expresion
+	*/
+	public String canonica() {
+		return canonica(raiz, new HashMap<Nodo, String>());
+	}
+
+	/* cada nodo compartido se convierte una sola vez */
+	private String canonica(Nodo nodo, HashMap<Nodo, String> hechos) {
+		String s = hechos.get(nodo);
+		if (s != null)
+			return s;
+		switch (nodo.operacion) {
+			case Programa.CONSTANTE:
+				s = Double.toString(nodo.valor);
+			break;
+			case Programa.X:
+				s = "x";
+			break;
+			case Programa.MENOS_X:
+				s = "-x";
+			break;
+			default:
+				String i = canonica(nodo.izquierdo, hechos);
+				if (nodo.derecho == null) {
+					s = "(" + nodo.operacion + " " + i + ")";
+					break;
+				}
+				String d = canonica(nodo.derecho, hechos);
+				boolean conmuta = nodo.operacion == Programa.SUMA || nodo.operacion == Programa.PRODUCTO;
+				if (conmuta && i.compareTo(d) > 0)
+					s = "(" + nodo.operacion + " " + d + " " + i + ")";
+				else
+					s = "(" + nodo.operacion + " " + i + " " + d + ")";
+		}
+		hechos.put(nodo, s);
+		return s;
+	}
+
+	/**
+	* Devuelve cuantos nodos distintos tiene el grafo.
+	* @return el numero de nodos
+	*/
+	public int getElementos() {
+		return nodos.size();
+	}
+}
@@ -1,45 +1,51 @@
 package mx.unam.ciencias.myp;
 
 import mx.unam.ciencias.edd.ArbolDerivacion;
-import mx.unam.ciencias.edd.AccionColapsaHojas;
 import mx.unam.ciencias.edd.Lista;
-import mx.unam.ciencias.edd.Pila;
-import mx.unam.ciencias.edd.Cola;
-import mx.unam.ciencias.edd.MeteSaca;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
 
 /**
 * Clase que se crea a partir de un {@link ArbolDerivacion}
 * de funciones, y devuelve los resultados de sus evaluaciones
 * dentro de determinado rango, asume que el arbol ya esta 
 * en un estado valido.
+* El arbol se compila una sola vez a un {@link Programa} postfijo.
+* Los puntos sueltos se evaluan con un arbol de cierres de
+* {@link GeneradorCierres} y las columnas con el programa; cuando la
+* expresion ya se evaluo suficientes veces el programa se traduce
+* a bytecode con {@link GeneradorBytecode}.
+* Cada hilo evalua el programa con su propio {@link ContextoEvaluacion}
+* y los cierres y el bytecode no tienen estado, asi que un mismo
+* interprete se puede usar desde varios hilos a la vez.
 **/
 public class Interprete{
-	private ArbolDerivacion<Muestra<Funcion>> arbol;
+	/* cuantos puntos se evaluan antes de generar bytecode */
+	static final int UMBRAL_BYTECODE = 4096;
+	/** En cuantos segmentos se parte el intervalo antes de subdividir */
+	public static final int SEGMENTOS_INICIALES = 32;
+	/** Cuantas veces se puede partir un segmento inicial */
+	public static final int PROFUNDIDAD_MAXIMA = 12;
+	/** Cuantos puntos puede devolver el muestreo adaptativo */
+	public static final int MAXIMO_PUNTOS = 4096;
+	/* la tolerancia por defecto, en pixeles */
+	static final double TOLERANCIA = 0.5;
+	/* los tramos de la evaluacion en paralelo no se parten por debajo de esto */
+	static final int TRAMO_MINIMO = 4096;
+	/* cuantos puntos da el muestreo uniforme */
+	static final int MUESTRAS = 300;
 
-	/* Clase local para tener una lista de puntos */	
-	class Punto {
-		private double x;
-		private double y;
-
-		Punto(double x, double y) {
-			this.x = x;
-			this.y = y;
-		}
-
-		public double getX() {
-			return x;
-		}
-
-		public double getY() {
-			return y;
-		}
-
-		@Override public String toString() {
-			return x + ", " + y + " ";
-		}
-
-
-	}
+	private final Programa programa;
+	/* los cierres del programa, o el bytecode cuando ya esta caliente */
+	private volatile DoubleUnaryOperator compilada;
+	/* si compilada ya es el bytecode */
+	private volatile boolean caliente;
+	/* puntos evaluados con el programa, negativo si ya no se intenta generar */
+	private final AtomicLong evaluaciones = new AtomicLong();
 
 	/**
 	* Constructor por defecto que recibe un {@link ArbolDerivacion} y
@@ -47,16 +53,24 @@ public class Interprete{
 	* operadores.
 	*/
 	Interprete(ArbolDerivacion<Muestra<Funcion>> arbol){
-		this.arbol = arbol;
+		this(new Programa(arbol));
+	}
+
+	/**
+	* Constructor que recibe la expresion ya compilada a un {@link Programa}.
+	*/
+	Interprete(Programa programa){
+		this.programa = programa;
+		this.compilada = GeneradorCierres.genera(programa);
 	}
 
 	/**
 	* Evalua el árbol cargado dentro del rango dado.
 	* @param x0 el inicio del intervalo
 	* @param x1 final del intervalo
-	* @return puntos una lista con las coordenadas de la evaluacion
+	* @return puntos las coordenadas de la evaluacion
 	*/
-	public  Lista<Punto> evalua(double x0, double x1) {
+	public Puntos evalua(double x0, double x1) {
 		return evalua(x0,x1,2);
 	}
 
@@ -65,117 +79,419 @@ public class Interprete{
 	* @param x0 el inicio del intervalo
 	* @param x1 final del intervalo
 	* @param paso el número de espacios entre evaluaciones 
-	* @return puntos una lista con las coordenadas de la evaluacion
+	* @return puntos las coordenadas de la evaluacion
 	*/
-	public  Lista<Punto> evalua(double x0, double x1, int paso) {
-		int LIMITE_EVALUACION = 300;
+	public Puntos evalua(double x0, double x1, int paso) {
+		int LIMITE_EVALUACION = MUESTRAS;
 		double delta = x1 - x0;
 		double incremento = delta / LIMITE_EVALUACION;
-		Lista<Punto> puntos = new Lista<>();
-		for (int i = 0;i < LIMITE_EVALUACION ; i++ ) {
-			puntos.agregaFinal(evalua(x0 + incremento*i));
-			
-		}
+		double[] xs = new double[LIMITE_EVALUACION];
+		double[] ys = new double[LIMITE_EVALUACION];
+		for (int i = 0;i < LIMITE_EVALUACION ; i++ )
+			xs[i] = x0 + incremento*i;
+		evalua(xs, ys);
+		Puntos puntos = new Puntos(LIMITE_EVALUACION);
+		puntos.agrega(xs, ys, LIMITE_EVALUACION);
 		return puntos;
 	}
 
 	/**
-	* Evalua un solo valor y devuelve un punto con las coordenadas
-	* resultantes
-	* @param x el valor a evaluar dentro de la funcion
-	* @return p el punto con las coordenadas resultantes
-	 */
-	public Punto evalua(double x) {
-		final Muestra<Funcion> nuevo = new Muestra<Funcion>(new Funcion.Constante(x), Gramatica.NUMERO);
-		Muestra<Funcion> y = arbol.colapsaHojas(new AccionColapsaHojas<Muestra<Funcion>>() {
-			@Override public Muestra<Funcion> actua(MeteSaca<Muestra<Funcion>> cola) {
-				return evalua(cola,nuevo,nuevo);
+	* Evalua el árbol cargado dentro del rango dado, poniendo mas puntos
+	* donde la curva se dobla y menos donde es plana.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @return puntos las coordenadas de la evaluacion
+	*/
+	public Puntos evaluaAdaptativo(double x0, double x1, double escalaX, double escalaY) {
+		return evaluaAdaptativo(x0, x1, escalaX, escalaY, TOLERANCIA);
+	}
+
+	/**
+	* Evalua el árbol cargado dentro del rango dado. Parte el intervalo
+	* en {@link #SEGMENTOS_INICIALES} segmentos, y cada segmento se
+	* parte a la mitad mientras el punto medio de la curva se aleje de la
+	* cuerda mas de <i>tolerancia</i> pixeles, o la curva no sea finita,
+	* hasta {@link #PROFUNDIDAD_MAXIMA} veces y sin pasar de
+	* {@link #MAXIMO_PUNTOS} puntos. Siempre se parte primero el segmento
+	* cuyo punto medio se aleja mas de su cuerda, asi que si se acaban los
+	* puntos el presupuesto queda repartido por todo el intervalo.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @param tolerancia la distancia maxima en pixeles entre la curva
+	*        y los segmentos que la aproximan
+	* @return puntos las coordenadas de la evaluacion
+	*/
+	public Puntos evaluaAdaptativo(double x0, double x1, double escalaX, double escalaY,
+								   double tolerancia) {
+		return evaluaAdaptativo(x0, x1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+								escalaX, escalaY, tolerancia);
+	}
+
+	/**
+	* Evalua el árbol cargado dentro del rango dado como
+	* {@link #evaluaAdaptativo(double, double, double, double, double)},
+	* pero un segmento no se parte si la evaluacion por intervalos
+	* garantiza que la curva queda toda arriba o toda abajo de
+	* [<i>y0</i>, <i>y1</i>], ahi la cuerda tampoco se ve.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param y0 el valor mas bajo que se ve
+	* @param y1 el valor mas alto que se ve
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @param tolerancia la distancia maxima en pixeles entre la curva
+	*        y los segmentos que la aproximan
+	* @return puntos las coordenadas de la evaluacion
+	*/
+	public Puntos evaluaAdaptativo(double x0, double x1, double y0, double y1,
+								   double escalaX, double escalaY, double tolerancia) {
+		PriorityQueue<Segmento> porPartir = new PriorityQueue<>();
+		/* los segmentos que ya no se parten; con los puntos iniciales y
+		   los que se agregan nunca son mas que MAXIMO_PUNTOS */
+		Segmento[] hechos = new Segmento[MAXIMO_PUNTOS];
+		int n = 0;
+		double incremento = (x1 - x0) / SEGMENTOS_INICIALES;
+		double xa = x0;
+		double ya = valor(xa);
+		for (int i = 1; i <= SEGMENTOS_INICIALES; i++) {
+			double xb = i == SEGMENTOS_INICIALES ? x1 : x0 + incremento * i;
+			double yb = valor(xb);
+			porPartir.add(new Segmento(xa, ya, xb, yb, 0, escalaX, escalaY, tolerancia));
+			xa = xb;
+			ya = yb;
+		}
+		/* los puntos que quedan para subdividir despues de los iniciales */
+		int restantes = MAXIMO_PUNTOS - SEGMENTOS_INICIALES - 1;
+		double[] cota = new double[2];
+		while (!porPartir.isEmpty()) {
+			Segmento s = porPartir.poll();
+			if (restantes <= 0 || !s.partible || fueraDeVentana(s.xa, s.xb, y0, y1, cota)) {
+				hechos[n++] = s;
+				continue;
 			}
-		});
-		Funcion.Constante yy = (Funcion.Constante) y.get();
-		return new Punto(x, yy.evalua());
+			restantes--;
+			porPartir.add(new Segmento(s.xa, s.ya, s.xm, s.ym, s.profundidad + 1,
+									   escalaX, escalaY, tolerancia));
+			porPartir.add(new Segmento(s.xm, s.ym, s.xb, s.yb, s.profundidad + 1,
+									   escalaX, escalaY, tolerancia));
+		}
+		Arrays.sort(hechos, 0, n, (a, b) -> Double.compare(a.xa, b.xa));
+		Puntos puntos = new Puntos(n + 1);
+		for (int i = 0; i < n; i++)
+			puntos.agrega(hechos[i].xa, hechos[i].ya);
+		puntos.agrega(x1, hechos[n - 1].yb);
+		return puntos;
+	}
+
+	/* Un segmento del muestreo adaptativo con el valor en su punto medio,
+	   los que mas se alejan de su cuerda se parten primero */
+	private class Segmento implements Comparable<Segmento> {
+		final double xa, ya, xb, yb, xm, ym;
+		final int profundidad;
+		/* cuantos pixeles se aleja el punto medio de la cuerda, infinito si
+		   la curva no es finita */
+		final double error;
+		/* si hace falta partirlo y todavia se puede */
+		final boolean partible;
+
+		Segmento(double xa, double ya, double xb, double yb, int profundidad,
+				 double escalaX, double escalaY, double tolerancia) {
+			this.xa = xa;
+			this.ya = ya;
+			this.xb = xb;
+			this.yb = yb;
+			this.profundidad = profundidad;
+			this.xm = (xa + xb) / 2;
+			/* si es muy profundo o mide menos de un pixel no se evalua nada */
+			if (profundidad >= PROFUNDIDAD_MAXIMA || (xb - xa) * escalaX < tolerancia) {
+				ym = Double.NaN;
+				error = 0;
+				partible = false;
+				return;
+			}
+			ym = valor(xm);
+			boolean finitos = !Double.isInfinite(ya) && !Double.isNaN(ya) &&
+							  !Double.isInfinite(yb) && !Double.isNaN(yb) &&
+							  !Double.isInfinite(ym) && !Double.isNaN(ym);
+			error = finitos ? Math.abs(ym - (ya + yb) / 2) * escalaY : Double.POSITIVE_INFINITY;
+			partible = error > tolerancia;
+		}
+
+		@Override public int compareTo(Segmento otro) {
+			return Double.compare(otro.error, error);
+		}
+	}
+
+	/**
+	* Evalua el árbol cargado en unos <i>n</i> puntos igualmente espaciados,
+	* pero repartidos solo entre las partes de [<i>x0</i>, <i>x1</i>] donde
+	* la curva puede pasar por [<i>y0</i>, <i>y1</i>]. Las partes donde la
+	* evaluacion por intervalos garantiza que la curva queda toda arriba o
+	* toda abajo no se muestrean, de ellas solo quedan sus extremos, asi la
+	* linea sale y vuelve a entrar por el mismo lado. Cerca de un polo la
+	* cota es toda la recta y el tramo se sigue muestreando.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param y0 el valor mas bajo que se ve
+	* @param y1 el valor mas alto que se ve
+	* @param n cuantos puntos se reparten entre las partes visibles
+	* @return puntos las coordenadas de la evaluacion
+	*/
+	public Puntos evaluaVisible(double x0, double x1, double y0, double y1, int n) {
+		Lista<double[]> tramos = tramosVisibles(x0, x1, y0, y1, (x1 - x0) / n);
+		Puntos puntos = new Puntos(n + 2 * tramos.getLongitud() + 2);
+		if (tramos.getLongitud() == 0)
+			return puntos;
+		double visible = 0;
+		for (double[] t : tramos)
+			visible += t[1] - t[0];
+		if (tramos.getPrimero()[0] > x0)
+			puntos.agrega(x0, evalua(x0));
+		for (double[] t : tramos) {
+			int k = Math.max(2, (int) Math.ceil(n * (t[1] - t[0]) / visible));
+			double[] xs = new double[k];
+			double[] ys = new double[k];
+			double incremento = (t[1] - t[0]) / (k - 1);
+			for (int i = 0; i < k; i++)
+				xs[i] = i == k - 1 ? t[1] : t[0] + incremento * i;
+			evalua(xs, ys);
+			puntos.agrega(xs, ys, k);
+		}
+		if (tramos.getUltimo()[1] < x1)
+			puntos.agrega(x1, evalua(x1));
+		return puntos;
+	}
+
+	/* los tramos de [a, b] donde la curva puede pasar por [y0, y1], cada
+	   uno como {inicio, fin}; los de menos de minimo ya no se parten */
+	Lista<double[]> tramosVisibles(double a, double b, double y0, double y1, double minimo) {
+		Lista<double[]> tramos = new Lista<>();
+		buscaVisibles(a, b, y0, y1, minimo, tramos, new double[2]);
+		return tramos;
+	}
+
+	/* agrega a la lista los tramos de [a, b] que pueden verse, los tramos
+	   de menos de minimo ya no se parten; dos tramos contiguos se unen */
+	private void buscaVisibles(double a, double b, double y0, double y1, double minimo,
+							   Lista<double[]> tramos, double[] cota) {
+		if (fueraDeVentana(a, b, y0, y1, cota))
+			return;
+		boolean adentro = cota[0] >= y0 && cota[1] <= y1;
+		if (adentro || b - a <= minimo) {
+			double[] ultimo = tramos.getLongitud() == 0 ? null : tramos.getUltimo();
+			if (ultimo != null && ultimo[1] == a)
+				ultimo[1] = b;
+			else
+				tramos.agregaFinal(new double[] { a, b });
+			return;
+		}
+		double m = (a + b) / 2;
+		buscaVisibles(a, m, y0, y1, minimo, tramos, cota);
+		buscaVisibles(m, b, y0, y1, minimo, tramos, cota);
+	}
+
+	/**
+	* Nos dice si la curva puede tener un polo en [<i>xa</i>, <i>xb</i>]:
+	* la evaluacion por intervalos ahi no esta acotada o no es un numero.
+	* Una curva continua, por empinada que sea, tiene una cota finita.
+	* @param xa un extremo del intervalo
+	* @param xb el otro extremo del intervalo
+	* @return <code>true</code> si la curva puede saltar en el intervalo
+	*/
+	public boolean salta(double xa, double xb) {
+		double[] cota = new double[2];
+		programa.evaluaIntervalo(Math.min(xa, xb), Math.max(xa, xb), cota);
+		return !(cota[0] > Double.NEGATIVE_INFINITY) || !(cota[1] < Double.POSITIVE_INFINITY);
+	}
+
+	/* nos dice si la curva en [a, b] queda toda arriba o toda abajo de
+	   [y0, y1], la cota de la evaluacion por intervalos queda en cota */
+	private boolean fueraDeVentana(double a, double b, double y0, double y1, double[] cota) {
+		if (Double.isInfinite(y0) && Double.isInfinite(y1))
+			return false;
+		programa.evaluaIntervalo(a, b, cota);
+		return cota[1] < y0 || cota[0] > y1;
+	}
+
+	/**
+	* Evalua el árbol cargado dentro del rango dado con <i>sobremuestreo</i>
+	* puntos por columna de pixeles, pero de cada columna solo devuelve el
+	* primer punto, el minimo, el maximo y el ultimo (M4), en el orden en
+	* que aparecen. Dibujar esos puntos da los mismos pixeles que dibujar
+	* todos, y nunca hay mas de 4 puntos por columna.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param columnas el ancho en pixeles de la grafica
+	* @param sobremuestreo cuantos puntos se evaluan por columna
+	* @return puntos las coordenadas de la evaluacion
+	*/
+	public Puntos evaluaM4(double x0, double x1, int columnas, int sobremuestreo) {
+		Puntos puntos = new Puntos(columnas * 4);
+		double[] xs = new double[columnas * sobremuestreo];
+		double[] ys = new double[xs.length];
+		evaluaParalelo(x0, x1, xs, ys);
+		for (int c = 0; c < columnas; c++)
+			reduceColumna(xs, ys, c * sobremuestreo, sobremuestreo, puntos);
+		return puntos;
 	}
 
 	/**
-	* Funcion que evalua recursivamente utilizando una pila de operadores, de esta manera  evalua respetando la 
-	* jerarquia de operadores 
+	* Evalua el árbol cargado en <i>xs.length</i> puntos igualmente
+	* espaciados de [<i>x0</i>, <i>x1</i>), guarda los valores de x en
+	* <i>xs</i> y los resultados en <i>ys</i>. El rango se parte en tramos
+	* que se evaluan en un {@link ForkJoinPool}, cada tramo escribe solo en
+	* su parte de los arreglos, asi que no hace falta sincronizar nada.
+	* @param x0 el inicio del intervalo
+	* @param x1 final del intervalo
+	* @param xs donde se guardan los valores de x
+	* @param ys donde se guardan las evaluaciones, del tamaño de <i>xs</i>
 	*/
-	private Muestra<Funcion> evalua(MeteSaca<Muestra<Funcion>> operadores, Muestra<Funcion> ultimo, Muestra<Funcion> valorX) {
-		Pila<Muestra<Funcion>> pila = new Pila<>();
-		if(operadores.esVacia())
-			return ultimo;
-
-		while (!operadores.esVacia()) {
-			Muestra<Funcion> izquierdo = operadores.saca();
-			Muestra<Funcion> padre = null;
-			Muestra<Funcion> derecho = null;
-			/* es un operador terminal */
-			if (izquierdo.tipo() == Gramatica.VARIABLE) {
-				Funcion.Constante val = (Funcion.Constante) izquierdo.get();
-				Funcion.Constante vX = (Funcion.Constante) valorX.get();
-
-				if(Double.compare(val.evalua(), Double.MIN_VALUE) == 0) {
-					valorX.set(new Funcion.Constante(vX.evalua() * -1));
-				} 
-				izquierdo = valorX;
+	public void evaluaParalelo(double x0, double x1, double[] xs, double[] ys) {
+		int n = xs.length;
+		/* la decision de usar el programa o el bytecode se toma aqui, los
+		   tramos solo leen */
+		boolean usaPrograma = !caliente && calienta(n);
+		Tramo tramo = new Tramo(x0, (x1 - x0) / n, xs, ys, 0, n, usaPrograma);
+		if (n <= TRAMO_MINIMO)
+			tramo.compute();
+		else
+			ForkJoinPool.commonPool().invoke(tramo);
+	}
+
+	/* Una parte [inicio, fin) de una evaluacion en paralelo */
+	private class Tramo extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private double x0, incremento;
+		private double[] xs, ys;
+		private int inicio, fin;
+		private boolean usaPrograma;
+
+		Tramo(double x0, double incremento, double[] xs, double[] ys,
+			  int inicio, int fin, boolean usaPrograma) {
+			this.x0 = x0;
+			this.incremento = incremento;
+			this.xs = xs;
+			this.ys = ys;
+			this.inicio = inicio;
+			this.fin = fin;
+			this.usaPrograma = usaPrograma;
+		}
+
+		@Override protected void compute() {
+			if (fin - inicio > TRAMO_MINIMO) {
+				int mitad = (inicio + fin) >>> 1;
+				invokeAll(new Tramo(x0, incremento, xs, ys, inicio, mitad, usaPrograma),
+						  new Tramo(x0, incremento, xs, ys, mitad, fin, usaPrograma));
+				return;
 			}
-			if (izquierdo.tipo() == Gramatica.NUMERO) {
-				/* era el ultimo numero de la pila -> resultado */
-				if (operadores.esVacia()) {
-					if(pila.esVacia())
-						return izquierdo;
-					else {
-						pila.mete(izquierdo);
-						break;
-					}
-				} else {
-					/*el padre deber ser una funcion, la gramatica y el tipo de recorrido lo indica */
-					padre = operadores.saca();
-					/* es un operador, entonces, debe tener un hijo derecho que es el siguiente elemento de la pila */ 
-					if (padre.tipo() == Gramatica.OPERADOR) {
-						derecho = operadores.saca();
-						if (derecho.tipo() == Gramatica.VARIABLE )
-							derecho = valorX;
-					}
-					padre = evalua(padre, izquierdo, derecho);
-					ultimo = padre;
-					pila.mete(padre);
-				}
-			/* si sale un operador, entonces, la pila no esta vacia */
+			for (int i = inicio; i < fin; i++)
+				xs[i] = x0 + incremento * i;
+			/* cada hilo usa su propio contexto del programa, los cierres y
+			   el bytecode no tienen estado */
+			if (usaPrograma) {
+				programa.evalua(xs, ys, inicio, fin - inicio, programa.contexto());
 			} else {
-				/* si es una funcion trigonometrica entonces, evaluamos con la pila que debe tener
-				a su hijo como elemento por sacar, pues fuel el ultimo en haber ingresado ya que este
-				es su padre */
-				if (izquierdo.tipo() == Gramatica.FUNCION) {
-					izquierdo = evalua(izquierdo,pila.saca(),null);
-				}
-				ultimo = izquierdo;
-				pila.mete(izquierdo);
+				DoubleUnaryOperator f = compilada;
+				for (int i = inicio; i < fin; i++)
+					ys[i] = f.applyAsDouble(xs[i]);
 			}
 		}
-		return  evalua(pila, ultimo,valorX);
+	}
+
+	/* agrega a los puntos el primero, el minimo, el maximo y el ultimo de la
+	   columna que empieza en inicio, sin repetir puntos */
+	private void reduceColumna(double[] xs, double[] ys, int inicio, int n, Puntos puntos) {
+		int fin = inicio + n - 1;
+		int minimo = -1, maximo = -1;
+		for (int i = inicio; i <= fin; i++) {
+			double y = ys[i];
+			if (Double.isNaN(y) || Double.isInfinite(y))
+				continue;
+			if (minimo == -1 || y < ys[minimo])
+				minimo = i;
+			if (maximo == -1 || y > ys[maximo])
+				maximo = i;
+		}
+		puntos.agrega(xs[inicio], ys[inicio]);
+		/* la columna no tiene valores finitos, basta el primero */
+		if (minimo == -1)
+			return;
+		int a = Math.min(minimo, maximo);
+		int b = Math.max(minimo, maximo);
+		if (a != inicio)
+			puntos.agrega(xs[a], ys[a]);
+		if (b != a && b != inicio)
+			puntos.agrega(xs[b], ys[b]);
+		if (fin != b && fin != inicio)
+			puntos.agrega(xs[fin], ys[fin]);
 	}
 
 	/**
-	* Evalua una funcion con respecto a su padre, si es una funcion binaria, toma a su hijo izquiero y derecho
-	* para generar una nueva muestra con el resultado de sus expresiones 
+	* Evalua el árbol cargado en todos los valores de <i>xs</i> y guarda
+	* los resultados en <i>ys</i>, cada operador se aplica a toda la
+	* columna de valores antes de pasar al siguiente.
+	* @param xs los valores de x a evaluar
+	* @param ys el arreglo donde se guardan las evaluaciones, al menos
+	*        del tamaño de <i>xs</i>
 	*/
-	private Muestra<Funcion> evalua(Muestra<Funcion> padre, Muestra<Funcion> izquierdo, Muestra<Funcion> derecho) {
-		/* sabemos que nuestro árbol es válido, por lo tanto podemos suponer que la izquierda es constante */
-		Muestra<Funcion> f =  null;
-		if (padre.tipo() == Gramatica.FUNCION) {
-			Funcion.Trigonometrica trig = (Funcion.Trigonometrica) padre.get();
-			Funcion.Constante val = (Funcion.Constante) izquierdo.get();
-			f = new Muestra<Funcion>(new Funcion.Constante(trig.evalua(val.evalua())), Gramatica.NUMERO);
-		/* ahora que es una funcion algebraica, el operador derecho no puede ser vacio */
-		} else {
-			Funcion.Constante x = (Funcion.Constante) izquierdo.get();
-			Funcion.Constante y = (Funcion.Constante) derecho.get();
-			Funcion.Algebraica fxy = (Funcion.Algebraica) padre.get();
-			f = new Muestra<Funcion>(new Funcion.Constante(fxy.evalua(x.evalua(),y.evalua())), Gramatica.NUMERO);
+	public void evalua(double[] xs, double[] ys) {
+		if (!caliente && calienta(xs.length)) {
+			programa.evalua(xs, ys);
+			return;
 		}
+		DoubleUnaryOperator f = compilada;
+		for (int i = 0; i < xs.length; i++)
+			ys[i] = f.applyAsDouble(xs[i]);
+	}
 
-		return f;
+	/**
+	* Evalua un solo valor
+	* @param x el valor a evaluar dentro de la funcion
+	* @return el valor de la funcion en <i>x</i>
+	 */
+	public double evalua(double x) {
+		return valor(x);
+	}
+
+	/* el valor de la expresion en x */
+	private double valor(double x) {
+		if (!caliente)
+			calienta(1);
+		return compilada.applyAsDouble(x);
+	}
+
+	/**
+	* Cuenta <i>n</i> evaluaciones mas y genera el bytecode si la
+	* expresion ya esta caliente.
+	* @return <code>true</code> si todavia no hay bytecode
+	*/
+	private boolean calienta(int n) {
+		if (evaluaciones.get() < 0)
+			return true;
+		if (evaluaciones.addAndGet(n) < UMBRAL_BYTECODE)
+			return true;
+		return !generaBytecode();
+	}
+
+	/* genera el bytecode una sola vez aunque varios hilos lleguen al umbral */
+	private synchronized boolean generaBytecode() {
+		if (caliente)
+			return true;
+		if (evaluaciones.get() < 0)
+			return false;
+		try {
+			compilada = GeneradorBytecode.genera(programa);
+			caliente = true;
+			return true;
+		} catch (IllegalStateException ise) {
+			/* la expresion es muy grande, nos quedamos con los cierres */
+			evaluaciones.set(Long.MIN_VALUE);
+			return false;
+		}
 	}
 
-}
\ No newline at end of file
+}
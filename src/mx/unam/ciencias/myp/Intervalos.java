@@ -0,0 +1,187 @@
+package mx.unam.ciencias.myp;
+
+/**
+* <p>Aritmetica de intervalos para la evaluacion por intervalos de un
+* {@link Programa}: las versiones de los operadores de
+* {@link Funcion.Algebraica} y de las funciones de
+* {@link Funcion.Trigonometrica} que reciben intervalos.</p>
+* <p>Los intervalos viven en dos pilas paralelas, <i>inf</i> con los
+* extremos inferiores y <i>sup</i> con los superiores, igual que la pila
+* de {@link Programa#evalua(double)}. Los operadores binarios combinan
+* los lugares <i>i</i> e <i>i</i> + 1 y dejan el resultado en <i>i</i>,
+* los unarios trabajan sobre <i>i</i>.</p>
+* <p>Cada resultado se abre hacia afuera unos ulps, las funciones de
+* {@link Math} solo garantizan un ulp de error y la evaluacion de puntos
+* puede no usar la misma implementacion. Si la operacion puede no estar
+* definida en algun punto el resultado es toda la recta, asi que la cota
+* siempre contiene a todos los valores.</p>
+*/
+final class Intervalos {
+
+	private static final double DOS_PI = 2 * Math.PI;
+	private static final double MEDIO_PI = Math.PI / 2;
+	/* cuantos ulps se abre cada resultado */
+	private static final double HOLGURA = 4;
+
+	private Intervalos() {}
+
+	/* guarda [a, b] en el lugar i, redondeado hacia afuera */
+	private static void guarda(double[] inf, double[] sup, int i, double a, double b) {
+		if (Double.isNaN(a) || Double.isNaN(b)) {
+			toda(inf, sup, i);
+			return;
+		}
+		inf[i] = Double.isInfinite(a) ? a : a - HOLGURA * Math.ulp(a);
+		sup[i] = Double.isInfinite(b) ? b : b + HOLGURA * Math.ulp(b);
+	}
+
+	/* el lugar i pasa a ser toda la recta */
+	private static void toda(double[] inf, double[] sup, int i) {
+		inf[i] = Double.NEGATIVE_INFINITY;
+		sup[i] = Double.POSITIVE_INFINITY;
+	}
+
+	/* nos dice si fase + k * periodo esta en [a, b] para algun entero k */
+	private static boolean contiene(double a, double b, double fase, double periodo) {
+		double k = Math.ceil((a - fase) / periodo);
+		return fase + k * periodo <= b;
+	}
+
+	static void suma(double[] inf, double[] sup, int i) {
+		guarda(inf, sup, i, inf[i] + inf[i + 1], sup[i] + sup[i + 1]);
+	}
+
+	static void resta(double[] inf, double[] sup, int i) {
+		guarda(inf, sup, i, inf[i] - sup[i + 1], sup[i] - inf[i + 1]);
+	}
+
+	static void producto(double[] inf, double[] sup, int i) {
+		producto(inf, sup, i, inf[i + 1], sup[i + 1]);
+	}
+
+	/* [inf[i], sup[i]] * [c, d] */
+	private static void producto(double[] inf, double[] sup, int i, double c, double d) {
+		double a = inf[i], b = sup[i];
+		double ac = a * c, ad = a * d, bc = b * c, bd = b * d;
+		guarda(inf, sup, i, Math.min(Math.min(ac, ad), Math.min(bc, bd)),
+			   Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+	}
+
+	/* como Funcion.divide, si el divisor puede ser 0 el cociente puede ser
+	   cualquier cosa */
+	static void division(double[] inf, double[] sup, int i) {
+		double c = inf[i + 1], d = sup[i + 1];
+		if (c <= 0 && d >= 0) {
+			toda(inf, sup, i);
+			return;
+		}
+		producto(inf, sup, i, 1 / d, 1 / c);
+	}
+
+	/* el lugar i pasa a ser su reciproco */
+	private static void reciproco(double[] inf, double[] sup, int i) {
+		double a = inf[i], b = sup[i];
+		if (a <= 0 && b >= 0) {
+			toda(inf, sup, i);
+			return;
+		}
+		guarda(inf, sup, i, 1 / b, 1 / a);
+	}
+
+	/* Math.pow es monotona en cada argumento si la base no es negativa, asi
+	   que los extremos estan en las esquinas */
+	static void potencia(double[] inf, double[] sup, int i) {
+		double c = inf[i + 1], d = sup[i + 1];
+		double a = inf[i], b = sup[i];
+		if (c == d && c == Math.rint(c) && Math.abs(c) < Integer.MAX_VALUE) {
+			int m = Math.abs((int) c);
+			entera(inf, sup, i, (int) c, Math.pow(a, m), Math.pow(b, m));
+			return;
+		}
+		if (a < 0) {
+			toda(inf, sup, i);
+			return;
+		}
+		double ac = Math.pow(a, c), ad = Math.pow(a, d), bc = Math.pow(b, c), bd = Math.pow(b, d);
+		guarda(inf, sup, i, Math.min(Math.min(ac, ad), Math.min(bc, bd)),
+			   Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+	}
+
+	/* con los mismos productos que Funcion.potenciaEntera */
+	static void potenciaEntera(double[] inf, double[] sup, int i, int n) {
+		int m = Math.abs(n);
+		entera(inf, sup, i, n, Funcion.potenciaEntera(inf[i], m), Funcion.potenciaEntera(sup[i], m));
+	}
+
+	/* x^n ya conociendo am = a^|n| y bm = b^|n| en los extremos */
+	private static void entera(double[] inf, double[] sup, int i, int n, double am, double bm) {
+		if (n == 0) {
+			guarda(inf, sup, i, 1, 1);
+			return;
+		}
+		double a = inf[i], b = sup[i];
+		if ((n & 1) != 0 || a >= 0)
+			guarda(inf, sup, i, am, bm);
+		else if (b <= 0)
+			guarda(inf, sup, i, bm, am);
+		else
+			guarda(inf, sup, i, 0, Math.max(am, bm));
+		if (n < 0)
+			reciproco(inf, sup, i);
+	}
+
+	static void seno(double[] inf, double[] sup, int i) {
+		periodica(inf, sup, i, Math.sin(inf[i]), Math.sin(sup[i]), MEDIO_PI, -MEDIO_PI);
+	}
+
+	static void coseno(double[] inf, double[] sup, int i) {
+		periodica(inf, sup, i, Math.cos(inf[i]), Math.cos(sup[i]), 0, Math.PI);
+	}
+
+	/* seno o coseno: entre los valores de los extremos, salvo que el
+	   intervalo contenga un maximo o un minimo */
+	private static void periodica(double[] inf, double[] sup, int i, double fa, double fb,
+								  double maximo, double minimo) {
+		double a = inf[i], b = sup[i];
+		if (Double.isInfinite(a) || Double.isInfinite(b) || b - a >= DOS_PI) {
+			guarda(inf, sup, i, -1, 1);
+			return;
+		}
+		double s = contiene(a, b, maximo, DOS_PI) ? 1 : Math.max(fa, fb);
+		double r = contiene(a, b, minimo, DOS_PI) ? -1 : Math.min(fa, fb);
+		guarda(inf, sup, i, r, s);
+	}
+
+	/* creciente entre cada par de polos; si los extremos no quedan en
+	   orden el polo calculado quedo un poco corrido y si hay uno adentro */
+	static void tangente(double[] inf, double[] sup, int i) {
+		double a = inf[i], b = sup[i];
+		double ta = Math.tan(a), tb = Math.tan(b);
+		if (!(b - a < Math.PI) || contiene(a, b, MEDIO_PI, Math.PI) || ta > tb) {
+			toda(inf, sup, i);
+			return;
+		}
+		guarda(inf, sup, i, ta, tb);
+	}
+
+	static void secante(double[] inf, double[] sup, int i) {
+		coseno(inf, sup, i);
+		reciproco(inf, sup, i);
+	}
+
+	static void cosecante(double[] inf, double[] sup, int i) {
+		seno(inf, sup, i);
+		reciproco(inf, sup, i);
+	}
+
+	/* decreciente entre cada par de polos, igual que la tangente */
+	static void cotangente(double[] inf, double[] sup, int i) {
+		double a = inf[i], b = sup[i];
+		double ca = Funcion.cotangente(a), cb = Funcion.cotangente(b);
+		if (!(b - a < Math.PI) || contiene(a, b, 0, Math.PI) || cb > ca) {
+			toda(inf, sup, i);
+			return;
+		}
+		guarda(inf, sup, i, cb, ca);
+	}
+}
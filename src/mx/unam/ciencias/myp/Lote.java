@@ -0,0 +1,302 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.Lista;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+* <p>Grafica por lotes y sin ventana: lee una expresion por renglon de un
+* archivo y escribe la grafica de cada una en su propio archivo.</p>
+* <p>Cada expresion se compila con el cache compartido de
+* {@link Trazador} y se traza con su propio trazador en un grupo de
+* hilos; nunca se usa el hilo de eventos, asi que funciona con
+* <code>java.awt.headless=true</code>. Al final se imprime cuantas
+* expresiones se graficaron por segundo.</p>
+* <p>Es la clase principal del jar: sin argumentos abre la ventana de
+* {@link Graficador}. No extiende ninguna clase de AWT, asi que el modo
+* sin ventana se elige antes de que se cargue el Toolkit.</p>
+*/
+public class Lote {
+
+	/** Los formatos de salida */
+	public enum Formato {
+		/** SVG con trayectorias compactas */
+		SVG,
+		/** SVG comprimido con gzip */
+		SVGZ,
+		/** imagen PNG */
+		PNG
+	}
+
+	/* con lineas de 3 pixeles una decima de pixel basta */
+	private static final int DECIMALES = 1;
+
+	private static final String USO =
+		"Uso: java -jar graficador.jar archivo [opciones]\n" +
+		"  -x x0 x1        el intervalo en x (-6.4 6.4)\n" +
+		"  -y y0 y1        el intervalo en y (-4.5 4.5)\n" +
+		"  -ancho n        el ancho en pixeles (900)\n" +
+		"  -alto n         el alto en pixeles (600)\n" +
+		"  -formato f      svg, svgz o png (svg)\n" +
+		"  -muestreo m     uniforme, adaptativo o m4 (adaptativo)\n" +
+		"  -simplifica t   el error en pixeles al simplificar, 0 para no (0.25)\n" +
+		"  -salida dir     el directorio de los archivos (.)\n" +
+		"  -hilos n        cuantas expresiones a la vez (los procesadores)\n" +
+		"El archivo tiene una expresion por renglon, los renglones vacios o\n" +
+		"que empiezan con # se ignoran.";
+
+	/**
+	* Las expresiones de un archivo, una por renglon, sin los renglones
+	* vacios ni los que empiezan con <code>#</code>. Los renglones se buscan
+	* en los bytes y se decodifican de uno en uno, asi que el archivo no se
+	* copia completo a la memoria; el salto puede ser <code>\n</code> o
+	* <code>\r\n</code> y el ultimo renglon no necesita salto.
+	*/
+	public static class Expresiones {
+		private final ByteBuffer bytes;
+		/* donde se copia cada renglon para decodificarlo */
+		private byte[] renglon;
+		private int numero;
+
+		/**
+		* Construye las expresiones de los bytes que quedan en el bufer, en
+		* UTF-8.
+		* @param bytes el contenido del archivo
+		*/
+		public Expresiones(ByteBuffer bytes) {
+			this.bytes = bytes;
+			this.renglon = new byte[256];
+		}
+
+		/**
+		* Devuelve la siguiente expresion, sin espacios al principio ni al
+		* final.
+		* @return la siguiente expresion, o <code>null</code> si ya no hay
+		*/
+		public String siguiente() {
+			while (bytes.hasRemaining()) {
+				String expresion = lee().trim();
+				if (!expresion.isEmpty() && !expresion.startsWith("#"))
+					return expresion;
+			}
+			return null;
+		}
+
+		/** @return el numero del renglon de la ultima expresion, desde 1 */
+		public int getRenglon() {
+			return numero;
+		}
+
+		/* el siguiente renglon, sin el salto */
+		private String lee() {
+			numero++;
+			int inicio = bytes.position();
+			int fin = inicio;
+			while (fin < bytes.limit() && bytes.get(fin) != '\n')
+				fin++;
+			int n = fin - inicio;
+			if (n > renglon.length)
+				renglon = new byte[Math.max(n, renglon.length * 2)];
+			bytes.get(renglon, 0, n);
+			bytes.position(Math.min(fin + 1, bytes.limit()));
+			if (n > 0 && renglon[n - 1] == '\r')
+				n--;
+			return new String(renglon, 0, n, StandardCharsets.UTF_8);
+		}
+	}
+
+	/* El resultado de graficar una expresion */
+	private static class Resultado {
+		int renglon;
+		String error;
+		long bytes;
+	}
+
+	private double x0 = -6.4;
+	private double x1 = 6.4;
+	private double y0 = -4.5;
+	private double y1 = 4.5;
+	private int ancho = 900;
+	private int alto = 600;
+	private Formato formato = Formato.SVG;
+	private Trazador.Muestreo muestreo = Trazador.Muestreo.ADAPTATIVO;
+	private double simplificacion = Trazador.SIMPLIFICACION;
+	private File salida = new File(".");
+	private int hilos = Runtime.getRuntime().availableProcessors();
+
+	/**
+	* Grafica por lotes las expresiones del archivo, o abre la ventana si
+	* no hay argumentos.
+	* @param args el archivo de expresiones y las opciones
+	*/
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			Graficador.main(args);
+			return;
+		}
+		if (System.getProperty("java.awt.headless") == null)
+			System.setProperty("java.awt.headless", "true");
+		Lote lote = new Lote();
+		String archivo;
+		try {
+			archivo = lote.opciones(args);
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.err.println(USO);
+			System.exit(1);
+			return;
+		}
+		try {
+			System.exit(lote.grafica(archivo) == 0 ? 0 : 2);
+		} catch (IOException ioe) {
+			System.err.println("No se pudo leer " + archivo + ": " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	* Lee las opciones de la linea de comandos, las que no aparecen se
+	* quedan con su valor por omision.
+	* @param args el archivo de expresiones y las opciones
+	* @return el archivo de expresiones
+	* @throws IllegalArgumentException si falta el archivo o el valor de una
+	*         opcion, si una opcion no existe o si un valor no es valido
+	*/
+	public String opciones(String[] args) {
+		String archivo = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-x":
+					x0 = Double.parseDouble(args[++i]);
+					x1 = Double.parseDouble(args[++i]);
+					break;
+				case "-y":
+					y0 = Double.parseDouble(args[++i]);
+					y1 = Double.parseDouble(args[++i]);
+					break;
+				case "-ancho":
+					ancho = Integer.parseInt(args[++i]);
+					break;
+				case "-alto":
+					alto = Integer.parseInt(args[++i]);
+					break;
+				case "-formato":
+					formato = Formato.valueOf(args[++i].toUpperCase());
+					break;
+				case "-muestreo":
+					muestreo = Trazador.Muestreo.valueOf(args[++i].toUpperCase());
+					break;
+				case "-simplifica":
+					simplificacion = Double.parseDouble(args[++i]);
+					break;
+				case "-salida":
+					salida = new File(args[++i]);
+					break;
+				case "-hilos":
+					hilos = Integer.parseInt(args[++i]);
+					break;
+				default:
+					if (args[i].startsWith("-") || archivo != null)
+						throw new IllegalArgumentException("Opcion desconocida: " + args[i]);
+					archivo = args[i];
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException aioobe) {
+			throw new IllegalArgumentException("Falta el valor de la ultima opcion");
+		}
+		if (archivo == null)
+			throw new IllegalArgumentException("Falta el archivo de expresiones");
+		if (!(x0 < x1) || !(y0 < y1) || ancho <= 0 || alto <= 0 || hilos <= 0 ||
+			!(simplificacion >= 0))
+			throw new IllegalArgumentException("Intervalos o medidas invalidos");
+		return archivo;
+	}
+
+	/* grafica todas las expresiones del archivo, devuelve cuantas fallaron */
+	private int grafica(String archivo) throws IOException {
+		if (!salida.isDirectory() && !salida.mkdirs())
+			throw new IOException("No se pudo crear " + salida);
+		long inicio = System.nanoTime();
+		ExecutorService grupo = Executors.newFixedThreadPool(hilos, r -> {
+			Thread t = new Thread(r, "lote");
+			t.setDaemon(true);
+			return t;
+		});
+		Lista<Future<Resultado>> resultados = new Lista<>();
+		Expresiones expresiones = new Expresiones(lee(archivo));
+		String expresion;
+		while ((expresion = expresiones.siguiente()) != null) {
+			final String e = expresion;
+			final int r = expresiones.getRenglon();
+			resultados.agregaFinal(grupo.submit(() -> grafica(e, r)));
+		}
+		int errores = 0;
+		long bytes = 0;
+		for (Future<Resultado> f : resultados) {
+			Resultado resultado;
+			try {
+				resultado = f.get();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException ee) {
+				throw new IllegalStateException(ee.getCause());
+			}
+			if (resultado.error != null) {
+				errores++;
+				System.err.println("renglon " + resultado.renglon + ": " + resultado.error);
+			}
+			bytes += resultado.bytes;
+		}
+		grupo.shutdown();
+		double segundos = (System.nanoTime() - inicio) / 1e9;
+		int total = resultados.getLongitud();
+		System.out.printf("%d expresiones en %.2f s con %d hilos: %.1f por segundo, %.1f MB escritos, %d con errores%n",
+						  total, segundos, hilos, total / segundos, bytes / 1e6, errores);
+		System.out.println("cache: " + Trazador.cache());
+		return errores;
+	}
+
+	/* el archivo completo, mapeado a memoria; sigue valido al cerrar el canal */
+	private static MappedByteBuffer lee(String archivo) throws IOException {
+		try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+			return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+		}
+	}
+
+	/* grafica una expresion en su archivo */
+	private Resultado grafica(String expresion, int renglon) {
+		Resultado resultado = new Resultado();
+		resultado.renglon = renglon;
+		Trazador trazador = new Trazador(ancho, alto, x0, x1, y0, y1);
+		trazador.setMuestreo(muestreo);
+		trazador.setSimplificacion(simplificacion);
+		trazador.setFormatoSVG(EscritorSVG.Formato.TRAYECTORIA, DECIMALES);
+		File archivo = new File(salida, String.format("grafica-%06d.%s", renglon,
+													  formato.name().toLowerCase()));
+		try {
+			trazador.agregaFuncion(expresion);
+			if (formato == Formato.PNG)
+				trazador.guardaPNG(archivo);
+			else
+				trazador.guardaSVG(archivo);
+			resultado.bytes = archivo.length();
+		} catch (MalFormedFunctionException | IOException e) {
+			resultado.error = e.getMessage();
+		} catch (RuntimeException re) {
+			resultado.error = re.toString();
+		}
+		return resultado;
+	}
+}
@@ -7,9 +7,9 @@ package mx.unam.ciencias.myp;
 */
 public class Muestra<T> implements Comparable<Muestra<T>> {
 	/** Objeto que va a almacenar la muestra */
-	private T objeto;
+	private final T objeto;
 	/** El tipo que representa dicho objeto dentro de la gramática */
-	private Gramatica tipo;
+	private final Gramatica tipo;
 	/** para orientar el arbol */
 	private int peso;
 
@@ -36,9 +36,6 @@ public class Muestra<T> implements Comparable<Muestra<T>> {
 	public T get() {
 		return objeto;
 	}
-	public void set(T objeto) {
-		this.objeto = objeto;
-	}
 
 	public Gramatica tipo() {
 		return tipo;
@@ -0,0 +1,580 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.ArbolDerivacion;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+* <p>Clase que representa un {@link ArbolDerivacion} de funciones ya
+* compilado a un programa plano en notacion postfija.</p>
+* <p>El arbol se recorre una sola vez para generar un arreglo de codigos
+* de operacion y un arreglo de constantes, despues cada evaluacion
+* solo recorre el arreglo usando una pila de <code>double</code>
+* reservada de antemano, asi que evaluar un punto no crea objetos
+* nuevos.</p>
+* <p>El programa es inmutable una vez compilado; la pila y las columnas
+* viven en un {@link ContextoEvaluacion}, cada hilo tiene el suyo, asi
+* que el mismo programa se puede evaluar desde varios hilos a la
+* vez.</p>
+*/
+public class Programa {
+
+	/* Codigos de operacion, CONSTANTE, POTENCIA_ENTERA, GUARDA y CARGA llevan
+	   un argumento */
+	static final int CONSTANTE = 0;
+	static final int X = 1;
+	static final int MENOS_X = 2;
+	static final int SUMA = 3;
+	static final int RESTA = 4;
+	static final int PRODUCTO = 5;
+	static final int DIVISION = 6;
+	static final int POTENCIA = 7;
+	static final int SENO = 8;
+	static final int COSENO = 9;
+	static final int TANGENTE = 10;
+	static final int SECANTE = 11;
+	static final int COSECANTE = 12;
+	static final int COTANGENTE = 13;
+	static final int POTENCIA_ENTERA = 14;
+	/* guarda el tope de la pila en una ranura sin sacarlo */
+	static final int GUARDA = 15;
+	/* mete a la pila el valor de una ranura */
+	static final int CARGA = 16;
+
+	/* los exponentes enteros que se reducen a productos */
+	static final int MAXIMO_EXPONENTE = 16;
+
+	/* las instrucciones del programa */
+	private int[] codigo;
+	/* cuantas instrucciones son validas dentro del arreglo */
+	private int longitud;
+	/* la alberca de constantes */
+	private double[] constantes;
+	private int numConstantes;
+	/* la profundidad maxima que alcanza la pila */
+	private int profundidad;
+	/* cuantas ranuras de subexpresiones comunes usa el programa, viven
+	   en la memoria despues de la pila */
+	private int ranuras;
+	/* la ranura de cada nodo compartido ya emitido, solo al compilar */
+	private HashMap<GrafoExpresion.Nodo, Integer> emitidos;
+	/* el contexto de cada hilo que evalua el programa */
+	private final ThreadLocal<ContextoEvaluacion> contextos =
+		ThreadLocal.withInitial(this::nuevoContexto);
+
+	/* cuantos puntos se evaluan por bloque en la evaluacion por columnas,
+	   asi las columnas de la pila caben en cache */
+	static final int BLOQUE = 256;
+
+	/**
+	* Compila el arbol de derivacion a un programa postfijo.
+	* @param arbol el arbol que genero el {@link Compilador}
+	*/
+	public Programa(ArbolDerivacion<Muestra<Funcion>> arbol) {
+		this(new GrafoExpresion(arbol));
+	}
+
+	/**
+	* Compila el grafo de una expresion a un programa postfijo, los
+	* nodos compartidos se evaluan una vez y se guardan en una ranura.
+	* @param grafo el grafo con los subarboles comunes compartidos
+	*/
+	public Programa(GrafoExpresion grafo) {
+		codigo = new int[16];
+		constantes = new double[4];
+		emitidos = new HashMap<>();
+		compila(grafo.raiz());
+		emitidos = null;
+		codigo = Arrays.copyOf(codigo, longitud);
+		constantes = Arrays.copyOf(constantes, numConstantes);
+		profundidad = calculaProfundidad();
+	}
+
+	/* recorre el grafo en postorden emitiendo las instrucciones */
+	private void compila(GrafoExpresion.Nodo nodo) {
+		/* ya se evaluo, solo hay que leer su ranura */
+		Integer ranura = emitidos.get(nodo);
+		if (ranura != null) {
+			emite(CARGA);
+			emite(ranura);
+			return;
+		}
+		switch (nodo.operacion) {
+			case CONSTANTE:
+				emiteConstante(nodo.valor);
+				return;
+			case X:
+			case MENOS_X:
+				emite(nodo.operacion);
+				return;
+		}
+		compila(nodo.izquierdo);
+		/* e^n con n entero pequeño se hace con productos, no con Math.pow */
+		int n = exponenteEntero(nodo);
+		if (n != 0) {
+			emite(POTENCIA_ENTERA);
+			emite(n);
+		} else if (nodo.derecho != null) {
+			compila(nodo.derecho);
+			emite(nodo.operacion);
+		} else {
+			emite(nodo.operacion);
+		}
+		if (nodo.usos > 1) {
+			emitidos.put(nodo, ranuras);
+			emite(GUARDA);
+			emite(ranuras++);
+		}
+	}
+
+	/* el exponente si es una potencia entera que se puede reducir, 0 si no */
+	private static int exponenteEntero(GrafoExpresion.Nodo nodo) {
+		if (nodo.operacion != POTENCIA || nodo.derecho.operacion != CONSTANTE)
+			return 0;
+		double e = nodo.derecho.valor;
+		if (e != Math.rint(e) || Math.abs(e) > MAXIMO_EXPONENTE)
+			return 0;
+		return (int) e;
+	}
+
+	/* traduce el simbolo del operador a su codigo de operacion */
+	static int operador(char c) {
+		switch (c) {
+			case '+':
+				return SUMA;
+			case '-':
+				return RESTA;
+			case '*':
+				return PRODUCTO;
+			case '/':
+				return DIVISION;
+			case '^':
+				return POTENCIA;
+		}
+		throw new IllegalArgumentException("Operador desconocido " + c);
+	}
+
+	private void emite(int instruccion) {
+		if (longitud == codigo.length)
+			codigo = Arrays.copyOf(codigo, longitud * 2);
+		codigo[longitud++] = instruccion;
+	}
+
+	private void emiteConstante(double c) {
+		if (numConstantes == constantes.length)
+			constantes = Arrays.copyOf(constantes, numConstantes * 2);
+		constantes[numConstantes] = c;
+		emite(CONSTANTE);
+		emite(numConstantes++);
+	}
+
+	/* simula el programa para saber cuanta pila necesita */
+	private int calculaProfundidad() {
+		int tope = 0, maximo = 0;
+		for (int i = 0; i < codigo.length; i++) {
+			int op = codigo[i];
+			if (op == CONSTANTE) {
+				i++;
+				tope++;
+			} else if (op == POTENCIA_ENTERA || op == GUARDA) {
+				i++;
+			} else if (op == CARGA) {
+				i++;
+				tope++;
+			} else if (op == X || op == MENOS_X) {
+				tope++;
+			} else if (op <= POTENCIA) {
+				tope--;
+			}
+			maximo = Math.max(maximo, tope);
+		}
+		return maximo;
+	}
+
+	/**
+	* Evalua el programa en <i>x</i> usando el contexto del hilo actual,
+	* no crea objetos.
+	* @param x el valor de la variable
+	* @return el valor de la expresion en <i>x</i>
+	*/
+	public double evalua(double x) {
+		return evalua(x, contexto());
+	}
+
+	/**
+	* Evalua el programa en <i>x</i> usando la memoria del contexto que
+	* recibe para la pila y las ranuras.
+	* @param x el valor de la variable
+	* @param contexto un contexto de este programa que nadie mas usa
+	* @return el valor de la expresion en <i>x</i>
+	*/
+	public double evalua(double x, ContextoEvaluacion contexto) {
+		final int[] codigo = this.codigo;
+		final double[] pila = contexto.pila;
+		int tope = -1;
+		for (int i = 0; i < codigo.length; i++) {
+			switch (codigo[i]) {
+				case CONSTANTE:
+					pila[++tope] = constantes[codigo[++i]];
+				break;
+				case X:
+					pila[++tope] = x;
+				break;
+				case MENOS_X:
+					pila[++tope] = -x;
+				break;
+				case SUMA:
+					tope--;
+					pila[tope] = pila[tope] + pila[tope + 1];
+				break;
+				case RESTA:
+					tope--;
+					pila[tope] = pila[tope] - pila[tope + 1];
+				break;
+				case PRODUCTO:
+					tope--;
+					pila[tope] = pila[tope] * pila[tope + 1];
+				break;
+				case DIVISION:
+					tope--;
+					pila[tope] = Funcion.divide(pila[tope], pila[tope + 1]);
+				break;
+				case POTENCIA:
+					tope--;
+					pila[tope] = Math.pow(pila[tope], pila[tope + 1]);
+				break;
+				case SENO:
+					pila[tope] = Math.sin(pila[tope]);
+				break;
+				case COSENO:
+					pila[tope] = Math.cos(pila[tope]);
+				break;
+				case TANGENTE:
+					pila[tope] = Math.tan(pila[tope]);
+				break;
+				case SECANTE:
+					pila[tope] = Funcion.secante(pila[tope]);
+				break;
+				case COSECANTE:
+					pila[tope] = Funcion.cosecante(pila[tope]);
+				break;
+				case COTANGENTE:
+					pila[tope] = Funcion.cotangente(pila[tope]);
+				break;
+				case POTENCIA_ENTERA:
+					pila[tope] = Funcion.potenciaEntera(pila[tope], codigo[++i]);
+				break;
+				case GUARDA:
+					pila[profundidad + codigo[++i]] = pila[tope];
+				break;
+				case CARGA:
+					pila[++tope] = pila[profundidad + codigo[++i]];
+				break;
+			}
+		}
+		return pila[0];
+	}
+
+	/**
+	* Evalua el programa sobre todo el intervalo [<i>a</i>, <i>b</i>] con
+	* aritmetica de intervalos, usando el contexto del hilo actual. Deja
+	* en <i>cota</i>[0] y <i>cota</i>[1] una cota inferior y una superior
+	* de todos los valores de la expresion en el intervalo; si la
+	* expresion puede no estar definida o tiene un polo en el intervalo,
+	* la cota es toda la recta.
+	* @param a el inicio del intervalo
+	* @param b el final del intervalo
+	* @param cota donde se guardan las cotas, de al menos dos elementos
+	*/
+	public void evaluaIntervalo(double a, double b, double[] cota) {
+		evaluaIntervalo(a, b, cota, contexto());
+	}
+
+	/**
+	* Evalua el programa sobre todo el intervalo [<i>a</i>, <i>b</i>] con
+	* aritmetica de intervalos usando las pilas del contexto que recibe.
+	* @param a el inicio del intervalo
+	* @param b el final del intervalo
+	* @param cota donde se guardan las cotas, de al menos dos elementos
+	* @param contexto un contexto de este programa que nadie mas usa
+	*/
+	public void evaluaIntervalo(double a, double b, double[] cota, ContextoEvaluacion contexto) {
+		final int[] codigo = this.codigo;
+		final double[] inf = contexto.inferiores();
+		final double[] sup = contexto.superiores();
+		int tope = -1;
+		for (int i = 0; i < codigo.length; i++) {
+			switch (codigo[i]) {
+				case CONSTANTE:
+					tope++;
+					inf[tope] = sup[tope] = constantes[codigo[++i]];
+				break;
+				case X:
+					tope++;
+					inf[tope] = a;
+					sup[tope] = b;
+				break;
+				case MENOS_X:
+					tope++;
+					inf[tope] = -b;
+					sup[tope] = -a;
+				break;
+				case SUMA:
+					Intervalos.suma(inf, sup, --tope);
+				break;
+				case RESTA:
+					Intervalos.resta(inf, sup, --tope);
+				break;
+				case PRODUCTO:
+					Intervalos.producto(inf, sup, --tope);
+				break;
+				case DIVISION:
+					Intervalos.division(inf, sup, --tope);
+				break;
+				case POTENCIA:
+					Intervalos.potencia(inf, sup, --tope);
+				break;
+				case SENO:
+					Intervalos.seno(inf, sup, tope);
+				break;
+				case COSENO:
+					Intervalos.coseno(inf, sup, tope);
+				break;
+				case TANGENTE:
+					Intervalos.tangente(inf, sup, tope);
+				break;
+				case SECANTE:
+					Intervalos.secante(inf, sup, tope);
+				break;
+				case COSECANTE:
+					Intervalos.cosecante(inf, sup, tope);
+				break;
+				case COTANGENTE:
+					Intervalos.cotangente(inf, sup, tope);
+				break;
+				case POTENCIA_ENTERA:
+					Intervalos.potenciaEntera(inf, sup, tope, codigo[++i]);
+				break;
+				case GUARDA:
+					inf[profundidad + codigo[i + 1]] = inf[tope];
+					sup[profundidad + codigo[++i]] = sup[tope];
+				break;
+				case CARGA:
+					tope++;
+					inf[tope] = inf[profundidad + codigo[i + 1]];
+					sup[tope] = sup[profundidad + codigo[++i]];
+				break;
+			}
+		}
+		cota[0] = inf[0];
+		cota[1] = sup[0];
+	}
+
+	/**
+	* Evalua el programa sobre toda una columna de valores, cada
+	* instruccion se aplica a un bloque completo de puntos antes de pasar
+	* a la siguiente, asi la interpretacion se paga una vez por
+	* instruccion y no una vez por instruccion y por punto.
+	* @param xs los valores de la variable
+	* @param ys donde se guardan los resultados, debe ser al menos
+	*        del tamaño de <i>xs</i>
+	*/
+	public void evalua(double[] xs, double[] ys) {
+		evalua(xs, ys, xs.length);
+	}
+
+	/**
+	* Evalua el programa sobre los primeros <i>n</i> valores de
+	* <i>xs</i> y guarda los resultados en <i>ys</i>.
+	* @param xs los valores de la variable
+	* @param ys donde se guardan los resultados
+	* @param n cuantos valores se evaluan
+	*/
+	public void evalua(double[] xs, double[] ys, int n) {
+		evalua(xs, ys, 0, n, contexto());
+	}
+
+	/**
+	* Evalua el programa sobre los valores de <i>xs</i> en
+	* [<i>inicio</i>, <i>inicio</i> + <i>n</i>) usando las columnas del
+	* contexto que recibe, asi varios hilos pueden evaluar partes
+	* distintas del mismo arreglo al mismo tiempo.
+	* @param xs los valores de la variable
+	* @param ys donde se guardan los resultados
+	* @param inicio el primer indice a evaluar
+	* @param n cuantos valores se evaluan
+	* @param contexto un contexto de este programa que nadie mas usa
+	*/
+	public void evalua(double[] xs, double[] ys, int inicio, int n, ContextoEvaluacion contexto) {
+		double[][] columnas = contexto.columnas();
+		for (int i = inicio; i < inicio + n; i += BLOQUE)
+			evaluaBloque(xs, ys, i, Math.min(BLOQUE, inicio + n - i), columnas);
+	}
+
+	/**
+	* Devuelve el contexto de evaluacion del hilo actual, se crea la
+	* primera vez que el hilo lo pide y despues se reutiliza.
+	* @return el contexto de este programa para el hilo actual
+	*/
+	public ContextoEvaluacion contexto() {
+		return contextos.get();
+	}
+
+	/**
+	* Reserva un contexto nuevo con la memoria que necesita el programa.
+	* @return un contexto de evaluacion de este programa
+	*/
+	public ContextoEvaluacion nuevoContexto() {
+		return new ContextoEvaluacion(memoria());
+	}
+
+	/* evalua un bloque de a lo mas BLOQUE puntos a partir de inicio */
+	private void evaluaBloque(double[] xs, double[] ys, int inicio, int n, double[][] columnas) {
+		final int[] codigo = this.codigo;
+		int tope = -1;
+		for (int i = 0; i < codigo.length; i++) {
+			int op = codigo[i];
+			if (op == CONSTANTE) {
+				Arrays.fill(columnas[++tope], 0, n, constantes[codigo[++i]]);
+				continue;
+			}
+			if (op == X) {
+				System.arraycopy(xs, inicio, columnas[++tope], 0, n);
+				continue;
+			}
+			if (op == MENOS_X) {
+				double[] c = columnas[++tope];
+				for (int j = 0; j < n; j++)
+					c[j] = -xs[inicio + j];
+				continue;
+			}
+			if (op == GUARDA) {
+				System.arraycopy(columnas[tope], 0, columnas[profundidad + codigo[++i]], 0, n);
+				continue;
+			}
+			if (op == CARGA) {
+				System.arraycopy(columnas[profundidad + codigo[++i]], 0, columnas[++tope], 0, n);
+				continue;
+			}
+			if (op <= POTENCIA) {
+				double[] a = columnas[--tope];
+				double[] b = columnas[tope + 1];
+				switch (op) {
+					case SUMA:
+						for (int j = 0; j < n; j++)
+							a[j] = a[j] + b[j];
+					break;
+					case RESTA:
+						for (int j = 0; j < n; j++)
+							a[j] = a[j] - b[j];
+					break;
+					case PRODUCTO:
+						for (int j = 0; j < n; j++)
+							a[j] = a[j] * b[j];
+					break;
+					case DIVISION:
+						for (int j = 0; j < n; j++)
+							a[j] = b[j] != 0 ? a[j] / b[j] : Double.POSITIVE_INFINITY;
+					break;
+					case POTENCIA:
+						for (int j = 0; j < n; j++)
+							a[j] = Math.pow(a[j], b[j]);
+					break;
+				}
+				continue;
+			}
+			double[] a = columnas[tope];
+			switch (op) {
+				case SENO:
+					for (int j = 0; j < n; j++)
+						a[j] = Math.sin(a[j]);
+				break;
+				case COSENO:
+					for (int j = 0; j < n; j++)
+						a[j] = Math.cos(a[j]);
+				break;
+				case TANGENTE:
+					for (int j = 0; j < n; j++)
+						a[j] = Math.tan(a[j]);
+				break;
+				case SECANTE:
+					for (int j = 0; j < n; j++)
+						a[j] = Funcion.secante(a[j]);
+				break;
+				case COSECANTE:
+					for (int j = 0; j < n; j++)
+						a[j] = Funcion.cosecante(a[j]);
+				break;
+				case COTANGENTE:
+					for (int j = 0; j < n; j++)
+						a[j] = Funcion.cotangente(a[j]);
+				break;
+				case POTENCIA_ENTERA:
+					int e = codigo[++i];
+					if (e == 2) {
+						for (int j = 0; j < n; j++)
+							a[j] = a[j] * a[j];
+					} else {
+						for (int j = 0; j < n; j++)
+							a[j] = Funcion.potenciaEntera(a[j], e);
+					}
+				break;
+			}
+		}
+		System.arraycopy(columnas[0], 0, ys, inicio, n);
+	}
+
+	/**
+	* Devuelve cuantos elementos de pila necesita una evaluacion.
+	* @return la profundidad maxima de la pila
+	*/
+	public int profundidad() {
+		return profundidad;
+	}
+
+	/**
+	* Devuelve cuantos elementos de memoria necesita una evaluacion,
+	* la pila mas las ranuras de las subexpresiones comunes.
+	* @return el tamaño de la memoria de una evaluacion
+	*/
+	public int memoria() {
+		return Math.max(profundidad + ranuras, 1);
+	}
+
+	/* cuantas ranuras usa el programa */
+	int ranuras() {
+		return ranuras;
+	}
+
+	/* las instrucciones, para los generadores de codigo */
+	int[] codigo() {
+		return codigo;
+	}
+
+	/* la alberca de constantes, para los generadores de codigo */
+	double[] constantes() {
+		return constantes;
+	}
+
+	/** Devuelve el programa en notacion postfija */
+	@Override public String toString() {
+		String[] nombres = {"", "x", "-x", "+", "-", "*", "/", "^",
+							"sen", "cos", "tan", "sec", "csc", "ctg", "^"};
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < codigo.length; i++) {
+			if (i > 0)
+				sb.append(' ');
+			if (codigo[i] == CONSTANTE)
+				sb.append(constantes[codigo[++i]]);
+			else if (codigo[i] == POTENCIA_ENTERA)
+				sb.append(codigo[++i]).append(" ^");
+			else if (codigo[i] == GUARDA)
+				sb.append("->").append(codigo[++i]);
+			else if (codigo[i] == CARGA)
+				sb.append("<-").append(codigo[++i]);
+			else
+				sb.append(nombres[codigo[i]]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,351 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+* <p>Los puntos de una curva en dos arreglos paralelos que crecen, uno con
+* las x y otro con las y.</p>
+* <p>Un punto cuesta 16 bytes y recorrer la curva es recorrer dos
+* arreglos, sin un objeto ni un nodo de {@link mx.unam.ciencias.edd.Lista}
+* por punto.</p>
+*/
+public class Puntos {
+
+	/** Decide si la curva tiene una discontinuidad entre dos valores de x */
+	public interface Saltos {
+		/**
+		* @param xa el inicio del intervalo
+		* @param xb el final del intervalo
+		* @return <code>true</code> si hay evidencia de que la curva salta
+		*         en [<i>xa</i>, <i>xb</i>]
+		*/
+		boolean salta(double xa, double xb);
+	}
+
+	private static final int CAPACIDAD_INICIAL = 16;
+
+	private double[] xs;
+	private double[] ys;
+	private int longitud;
+
+	/** Construye un arreglo de puntos vacio */
+	public Puntos() {
+		this(CAPACIDAD_INICIAL);
+	}
+
+	/**
+	* Construye un arreglo de puntos vacio con lugar para <i>capacidad</i>
+	* puntos antes de crecer.
+	* @param capacidad cuantos puntos caben al principio
+	*/
+	public Puntos(int capacidad) {
+		xs = new double[Math.max(capacidad, 1)];
+		ys = new double[xs.length];
+	}
+
+	/**
+	* Agrega un punto al final.
+	* @param x la coordenada x
+	* @param y la coordenada y
+	*/
+	public void agrega(double x, double y) {
+		if (longitud == xs.length) {
+			xs = Arrays.copyOf(xs, longitud * 2);
+			ys = Arrays.copyOf(ys, longitud * 2);
+		}
+		xs[longitud] = x;
+		ys[longitud++] = y;
+	}
+
+	/**
+	* Agrega los primeros <i>n</i> puntos de los arreglos al final.
+	* @param xs las coordenadas x
+	* @param ys las coordenadas y
+	* @param n cuantos puntos se agregan
+	*/
+	public void agrega(double[] xs, double[] ys, int n) {
+		if (longitud + n > this.xs.length) {
+			int capacidad = Math.max(longitud + n, this.xs.length * 2);
+			this.xs = Arrays.copyOf(this.xs, capacidad);
+			this.ys = Arrays.copyOf(this.ys, capacidad);
+		}
+		System.arraycopy(xs, 0, this.xs, longitud, n);
+		System.arraycopy(ys, 0, this.ys, longitud, n);
+		longitud += n;
+	}
+
+	/** @return cuantos puntos hay */
+	public int getLongitud() {
+		return longitud;
+	}
+
+	/**
+	* @param i el indice del punto
+	* @return la coordenada x del punto <i>i</i>
+	*/
+	public double getX(int i) {
+		return xs[i];
+	}
+
+	/**
+	* @param i el indice del punto
+	* @return la coordenada y del punto <i>i</i>
+	*/
+	public double getY(int i) {
+		return ys[i];
+	}
+
+	/** Quita todos los puntos, la capacidad se conserva */
+	public void limpia() {
+		longitud = 0;
+	}
+
+	/**
+	* <p>Quita los puntos que se pueden saltar sin que la linea se aleje de
+	* ellos mas de <i>tolerancia</i> pixeles, en el mismo arreglo y en
+	* tiempo lineal.</p>
+	* <p>Es el algoritmo de cono de Zhao y Saalfeld: desde cada punto que
+	* se queda se lleva el cono de direcciones cuyo rayo pasa a menos de
+	* <i>tolerancia</i> de todos los puntos saltados; el siguiente punto
+	* que se queda es el ultimo que cae dentro del cono. Cada punto se
+	* revisa a lo mas dos veces. Los puntos que no son finitos se quedan
+	* siempre y la linea vuelve a empezar despues de ellos.</p>
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @param tolerancia el error maximo en pixeles
+	*/
+	public void simplifica(double escalaX, double escalaY, double tolerancia) {
+		int escritos = 0;
+		int i = 0;
+		while (i < longitud) {
+			xs[escritos] = xs[i];
+			ys[escritos++] = ys[i];
+			if (!finito(i)) {
+				i++;
+				continue;
+			}
+			double ax = xs[i] * escalaX, ay = ys[i] * escalaY;
+			/* la direccion de referencia del cono y sus limites en radianes */
+			double rx = 0, ry = 0, desde = 0, hasta = 0;
+			boolean cono = false;
+			double lejos = 0;
+			int ultimo = -1;
+			int j = i + 1;
+			for (; j < longitud && finito(j); j++) {
+				double dx = xs[j] * escalaX - ax, dy = ys[j] * escalaY - ay;
+				double d = Math.hypot(dx, dy);
+				/* la linea no puede regresar por encima de los que se saltan */
+				if (d < lejos - tolerancia)
+					break;
+				lejos = Math.max(lejos, d);
+				if (d <= tolerancia) {
+					ultimo = j;
+					continue;
+				}
+				double abertura = Math.asin(tolerancia / d);
+				if (!cono) {
+					rx = dx / d;
+					ry = dy / d;
+					desde = -abertura;
+					hasta = abertura;
+					cono = true;
+					ultimo = j;
+					continue;
+				}
+				double angulo = Math.atan2(rx * dy - ry * dx, rx * dx + ry * dy);
+				if (angulo < desde || angulo > hasta)
+					break;
+				desde = Math.max(desde, angulo - abertura);
+				hasta = Math.min(hasta, angulo + abertura);
+				ultimo = j;
+			}
+			/* sin ultimo es porque j ya no es finito o se acabaron */
+			i = ultimo == -1 ? j : ultimo;
+		}
+		longitud = escritos;
+	}
+
+	/**
+	* <p>Recorta la curva a la caja [<i>xmin</i>, <i>xmax</i>] &times;
+	* [<i>ymin</i>, <i>ymax</i>]: solo quedan las partes que la cruzan, cada
+	* una con los puntos donde entra y sale de la caja, separadas por un
+	* punto que no es un numero.</p>
+	* <p>La curva tambien se corta en los puntos que no son finitos y en los
+	* saltos: un segmento que va de arriba de la caja a abajo de ella (o al
+	* reves) en un solo paso no se dibuja si <i>saltos</i> dice que ahi
+	* hay una discontinuidad, como la asintota de la tangente; si no, es
+	* una curva empinada y se recorta como cualquier otro.</p>
+	* @param xmin el borde izquierdo de la caja
+	* @param xmax el borde derecho de la caja
+	* @param ymin el borde de abajo de la caja
+	* @param ymax el borde de arriba de la caja
+	* @param saltos quien decide si hay un salto, o <code>null</code> para
+	*        no cortar nunca por saltos
+	*/
+	public void recorta(double xmin, double xmax, double ymin, double ymax, Saltos saltos) {
+		Puntos tramos = new Puntos(longitud + 16);
+		/* si el ultimo punto de tramos es el final de un tramo abierto */
+		boolean abierto = false;
+		double[] t = new double[2];
+		for (int i = 0; i < longitud; i++) {
+			double xb = xs[i], yb = ys[i];
+			if (!finito(i)) {
+				abierto = false;
+				continue;
+			}
+			if (i == 0 || !finito(i - 1)) {
+				boolean dentro = xmin <= xb && xb <= xmax && ymin <= yb && yb <= ymax;
+				if (dentro)
+					tramos.empieza(xb, yb);
+				abierto = dentro;
+				continue;
+			}
+			double xa = xs[i - 1], ya = ys[i - 1];
+			double dx = xb - xa, dy = yb - ya;
+			/* en un salto los dos puntos quedan fuera, de lados contrarios */
+			boolean salto = (ya > ymax && yb < ymin || ya < ymin && yb > ymax) &&
+							saltos != null && saltos.salta(xa, xb);
+			if (salto || Double.isInfinite(dx) || Double.isInfinite(dy) ||
+				!recorta(xa - xmin, xmax - xa, ya - ymin, ymax - ya, dx, dy, t)) {
+				abierto = false;
+				continue;
+			}
+			if (!abierto || t[0] > 0)
+				tramos.empieza(xa + t[0] * dx, ya + t[0] * dy);
+			if (t[1] < 1) {
+				tramos.agrega(xa + t[1] * dx, ya + t[1] * dy);
+				abierto = false;
+			} else {
+				tramos.agrega(xb, yb);
+				abierto = true;
+			}
+		}
+		xs = tramos.xs;
+		ys = tramos.ys;
+		longitud = tramos.longitud;
+	}
+
+	/* agrega el primer punto de un tramo, separado del anterior */
+	private void empieza(double x, double y) {
+		if (longitud > 0)
+			agrega(Double.NaN, Double.NaN);
+		agrega(x, y);
+	}
+
+	/* Liang y Barsky: la parte [t[0], t[1]] del segmento que queda en la
+	   caja, dadas las distancias del inicio a cada borde; nos dice si hay */
+	private static boolean recorta(double izquierda, double derecha, double abajo, double arriba,
+								   double dx, double dy, double[] t) {
+		t[0] = 0;
+		t[1] = 1;
+		return limita(-dx, izquierda, t) && limita(dx, derecha, t) &&
+			   limita(-dy, abajo, t) && limita(dy, arriba, t);
+	}
+
+	/* acota t con un borde, p es como avanza el segmento hacia afuera y q
+	   la distancia al borde */
+	private static boolean limita(double p, double q, double[] t) {
+		if (p == 0)
+			return q >= 0;
+		double r = q / p;
+		if (p < 0) {
+			if (r > t[1])
+				return false;
+			t[0] = Math.max(t[0], r);
+		} else {
+			if (r < t[0])
+				return false;
+			t[1] = Math.min(t[1], r);
+		}
+		return true;
+	}
+
+	private boolean finito(int i) {
+		return !Double.isNaN(xs[i]) && !Double.isInfinite(xs[i]) &&
+			   !Double.isNaN(ys[i]) && !Double.isInfinite(ys[i]);
+	}
+
+	/**
+	* Proyecta los puntos a pixeles, <i>px</i> = <i>origenX</i> +
+	* <i>x</i> <i>escalaX</i> y lo mismo en y, truncando; los resultados
+	* quedan en los primeros {@link #getLongitud} lugares de los arreglos.
+	* @param origenX el pixel donde queda x = 0
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param origenY el pixel donde queda y = 0
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @param px donde quedan las x en pixeles
+	* @param py donde quedan las y en pixeles
+	*/
+	public void proyecta(double origenX, double escalaX, double origenY, double escalaY,
+						 int[] px, int[] py) {
+		for (int i = 0; i < longitud; i++) {
+			px[i] = (int) (origenX + xs[i] * escalaX);
+			py[i] = (int) (origenY + ys[i] * escalaY);
+		}
+	}
+
+	/**
+	* Proyecta los puntos a pixeles como {@link #proyecta(double, double,
+	* double, double, int[], int[])} en un {@link Polygon} que usa los
+	* arreglos directamente, sin copiarlos.
+	* @param origenX el pixel donde queda x = 0
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param origenY el pixel donde queda y = 0
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @return la polilinea en pixeles
+	*/
+	public Polygon poligono(double origenX, double escalaX, double origenY, double escalaY) {
+		Polygon poligono = new Polygon();
+		poligono.xpoints = new int[longitud];
+		poligono.ypoints = new int[longitud];
+		poligono.npoints = longitud;
+		proyecta(origenX, escalaX, origenY, escalaY, poligono.xpoints, poligono.ypoints);
+		return poligono;
+	}
+
+	/**
+	* Proyecta los puntos a pixeles como {@link #poligono} pero corta la
+	* curva en los puntos que no son finitos: cada tramo de al menos dos
+	* puntos es su propia polilinea.
+	* @param origenX el pixel donde queda x = 0
+	* @param escalaX cuantos pixeles mide una unidad en x
+	* @param origenY el pixel donde queda y = 0
+	* @param escalaY cuantos pixeles mide una unidad en y
+	* @return los tramos en pixeles, en orden
+	*/
+	public Lista<Polygon> tramos(double origenX, double escalaX, double origenY, double escalaY) {
+		Lista<Polygon> tramos = new Lista<Polygon>();
+		int i = 0;
+		while (i < longitud) {
+			if (!finito(i)) {
+				i++;
+				continue;
+			}
+			int j = i + 1;
+			while (j < longitud && finito(j))
+				j++;
+			if (j - i > 1) {
+				Polygon tramo = new Polygon();
+				tramo.xpoints = new int[j - i];
+				tramo.ypoints = new int[j - i];
+				tramo.npoints = j - i;
+				for (int k = i; k < j; k++) {
+					tramo.xpoints[k - i] = (int) (origenX + xs[k] * escalaX);
+					tramo.ypoints[k - i] = (int) (origenY + ys[k] * escalaY);
+				}
+				tramos.agregaFinal(tramo);
+			}
+			i = j;
+		}
+		return tramos;
+	}
+
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < longitud; i++)
+			sb.append(xs[i]).append(", ").append(ys[i]).append(' ');
+		return sb.toString();
+	}
+}
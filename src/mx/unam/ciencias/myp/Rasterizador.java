@@ -0,0 +1,305 @@
+package mx.unam.ciencias.myp;
+
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+* <p>Dibuja polilineas con antialias directamente en un arreglo de pixeles
+* ARGB, sin Swing ni Java2D.</p>
+* <p>Cada segmento se recorre por su eje mayor como en el algoritmo de
+* Wu, pero en cada columna (o renglon) se calcula cuanto de cada pixel
+* cubre una banda del grosor de la linea, asi que tambien sirve para
+* lineas de mas de un pixel. La cobertura de una polilinea se acumula
+* con el maximo y se mezcla con el color una sola vez, para que las
+* uniones entre segmentos no se vean mas oscuras; lo mismo con todos los
+* tramos de una grafica.</p>
+* <p>La imagen se divide en mosaicos de {@link #MOSAICO} pixeles que se
+* dibujan al mismo tiempo, cada uno con todos los segmentos que lo
+* tocan.</p>
+* <p>Un rasterizador puede dibujar solo una franja de renglones de la
+* imagen, asi una imagen muy grande se puede dibujar y guardar por
+* partes, ver {@link EscritorPNG}.</p>
+*/
+public class Rasterizador {
+
+	/** El lado de los mosaicos que se dibujan al mismo tiempo */
+	public static final int MOSAICO = 64;
+	/** El grosor de las lineas en pixeles, el mismo que en {@link DibujaGUI} */
+	public static final double GROSOR = 2;
+
+	/* los hilos que dibujan los mosaicos */
+	private static final ExecutorService HILOS = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "rasterizador");
+			t.setDaemon(true);
+			return t;
+		});
+
+	private final int ancho;
+	private final int alto;
+	/* la franja que se dibuja */
+	private final int renglon;
+	private final int renglones;
+	private final int[] pixeles;
+
+	/**
+	* Construye un rasterizador con todos los pixeles transparentes.
+	* @param ancho el ancho de la imagen
+	* @param alto el alto de la imagen
+	*/
+	public Rasterizador(int ancho, int alto) {
+		this(ancho, alto, 0, alto);
+	}
+
+	/**
+	* Construye un rasterizador que solo dibuja los renglones
+	* [<i>renglon</i>, <i>renglon</i> + <i>renglones</i>) de la imagen.
+	* @param ancho el ancho de la imagen
+	* @param alto el alto de la imagen
+	* @param renglon el primer renglon de la franja
+	* @param renglones cuantos renglones tiene la franja
+	*/
+	public Rasterizador(int ancho, int alto, int renglon, int renglones) {
+		if (ancho <= 0 || alto <= 0 || renglones <= 0 || renglon < 0 || renglon + renglones > alto)
+			throw new IllegalArgumentException("Medidas invalidas: " + ancho + "x" + alto);
+		this.ancho = ancho;
+		this.alto = alto;
+		this.renglon = renglon;
+		this.renglones = renglones;
+		this.pixeles = new int[ancho * renglones];
+	}
+
+	/**
+	* Dibuja las graficas en orden, cada una con el color que le toca
+	* en {@link DibujaGUI}.
+	* @param poligonos las polilineas en pixeles de cada grafica
+	*/
+	public void dibuja(Lista<Lista<Polygon>> poligonos) {
+		dibuja(poligonos, true);
+	}
+
+	/* si no es en paralelo todos los mosaicos se dibujan en este hilo */
+	void dibuja(Lista<Lista<Polygon>> poligonos, boolean paralelo) {
+		int n = 0;
+		for (Lista<Polygon> grafica : poligonos)
+			n += grafica.getLongitud();
+		final Polygon[] lineas = new Polygon[n];
+		final int[][] segmentos = new int[n][];
+		/* la grafica de cada linea, y el color de cada grafica */
+		final int[] graficas = new int[n];
+		final int[] colores = new int[poligonos.getLongitud()];
+		int g = 0, k = 0;
+		for (Lista<Polygon> grafica : poligonos) {
+			colores[g] = DibujaGUI.color(g).getRGB();
+			for (Polygon p : grafica) {
+				graficas[k] = g;
+				segmentos[k] = enFranja(p);
+				lineas[k++] = p;
+			}
+			g++;
+		}
+		int columnas = (ancho + MOSAICO - 1) / MOSAICO;
+		int filas = (renglones + MOSAICO - 1) / MOSAICO;
+		if (!paralelo || columnas * filas == 1) {
+			for (int f = 0; f < filas; f++)
+				for (int c = 0; c < columnas; c++)
+					new Mosaico(c * MOSAICO, renglon + f * MOSAICO).dibuja(lineas, segmentos, graficas, colores);
+			return;
+		}
+		Lista<Future<?>> mosaicos = new Lista<>();
+		for (int f = 0; f < filas; f++) {
+			for (int c = 0; c < columnas; c++) {
+				final Mosaico m = new Mosaico(c * MOSAICO, renglon + f * MOSAICO);
+				mosaicos.agregaFinal(HILOS.submit(() -> m.dibuja(lineas, segmentos, graficas, colores)));
+			}
+		}
+		try {
+			for (Future<?> m : mosaicos)
+				m.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException(ee.getCause());
+		}
+	}
+
+	/* los segmentos de la polilinea que tocan la franja, el segmento i va
+	   del punto i - 1 al i; asi los mosaicos de una franja angosta no
+	   revisan toda la polilinea */
+	private int[] enFranja(Polygon p) {
+		int[] segmentos = new int[Math.max(p.npoints - 1, 0)];
+		int n = 0;
+		double arriba = renglon - GROSOR - 1, abajo = renglon + renglones + GROSOR;
+		for (int i = 1; i < p.npoints; i++) {
+			int ya = p.ypoints[i - 1], yb = p.ypoints[i];
+			if (Math.max(ya, yb) >= arriba && Math.min(ya, yb) <= abajo)
+				segmentos[n++] = i;
+		}
+		return n == segmentos.length ? segmentos : Arrays.copyOf(segmentos, n);
+	}
+
+	/* Un pedazo de la imagen con su propia cobertura */
+	private class Mosaico {
+		/* la esquina y el final, sin incluir */
+		final int x0, y0, x1, y1;
+		final int lado;
+		/* cuanto cubre cada pixel la polilinea actual, de 0 a 1 */
+		final float[] cobertura;
+
+		Mosaico(int x0, int y0) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = Math.min(x0 + MOSAICO, ancho);
+			this.y1 = Math.min(y0 + MOSAICO, renglon + renglones);
+			this.lado = x1 - x0;
+			this.cobertura = new float[lado * (y1 - y0)];
+		}
+
+		void dibuja(Polygon[] lineas, int[][] segmentos, int[] graficas, int[] colores) {
+			boolean alguno = false;
+			for (int k = 0; k < lineas.length; k++) {
+				Polygon p = lineas[k];
+				for (int i : segmentos[k]) {
+					/* los centros de los pixeles estan a medio pixel */
+					double xa = p.xpoints[i - 1] + 0.5, ya = p.ypoints[i - 1] + 0.5;
+					double xb = p.xpoints[i] + 0.5, yb = p.ypoints[i] + 0.5;
+					if (toca(Math.min(xa, xb), Math.min(ya, yb), Math.max(xa, xb), Math.max(ya, yb))) {
+						segmento(xa, ya, xb, yb);
+						alguno = true;
+					}
+				}
+				/* se mezcla al terminar el ultimo tramo de la grafica */
+				boolean ultimo = k == lineas.length - 1 || graficas[k + 1] != graficas[k];
+				if (alguno && ultimo) {
+					mezcla(colores[graficas[k]]);
+					alguno = false;
+				}
+			}
+		}
+
+		/* nos dice si la caja, engordada por el grosor, toca el mosaico */
+		boolean toca(double xa, double ya, double xb, double yb) {
+			return xb + GROSOR >= x0 && xa - GROSOR <= x1 && yb + GROSOR >= y0 && ya - GROSOR <= y1;
+		}
+
+		/* acumula la cobertura del segmento de a a b */
+		void segmento(double xa, double ya, double xb, double yb) {
+			double dx = xb - xa, dy = yb - ya;
+			if (dx == 0 && dy == 0)
+				return;
+			if (Math.abs(dx) >= Math.abs(dy))
+				recorre(xa, ya, xb, yb, x0, x1, y0, y1, false);
+			else
+				recorre(ya, xa, yb, xb, y0, y1, x0, x1, true);
+		}
+
+		/* recorre el segmento por su eje mayor u; en cada paso la banda del
+		   grosor cubre [c - t, c + t] en el eje menor v. Si transpuesto, u es y */
+		void recorre(double ua, double va, double ub, double vb,
+					 int u0, int u1, int v0, int v1, boolean transpuesto) {
+			if (ua > ub) {
+				double t = ua; ua = ub; ub = t;
+				t = va; va = vb; vb = t;
+			}
+			double m = (vb - va) / (ub - ua);
+			double t = GROSOR * Math.sqrt(1 + m * m) / 2;
+			int desde = (int) Math.max(u0, Math.ceil(ua - 0.5));
+			int hasta = (int) Math.min(u1 - 1, Math.floor(ub - 0.5));
+			for (int i = desde; i <= hasta; i++) {
+				double c = va + m * (i + 0.5 - ua);
+				double a = c - t, b = c + t;
+				int j0 = (int) Math.max(v0, Math.floor(a));
+				int j1 = (int) Math.min(v1 - 1, Math.floor(b));
+				for (int j = j0; j <= j1; j++) {
+					float cubre = (float) (Math.min(j + 1, b) - Math.max(j, a));
+					int l = transpuesto ? (i - y0) * lado + (j - x0) : (j - y0) * lado + (i - x0);
+					if (cubre > cobertura[l])
+						cobertura[l] = Math.min(cubre, 1f);
+				}
+			}
+		}
+
+		/* mezcla el color con la cobertura acumulada sobre los pixeles y la
+		   vuelve a cero */
+		void mezcla(int color) {
+			float alfa = (color >>> 24) / 255f;
+			int r = (color >> 16) & 0xff, g = (color >> 8) & 0xff, b = color & 0xff;
+			for (int y = y0; y < y1; y++) {
+				int base = (y - y0) * lado;
+				for (int x = x0; x < x1; x++) {
+					float cubre = cobertura[base + x - x0];
+					if (cubre == 0)
+						continue;
+					cobertura[base + x - x0] = 0;
+					int l = (y - renglon) * ancho + x;
+					pixeles[l] = encima(r, g, b, cubre * alfa, pixeles[l]);
+				}
+			}
+		}
+	}
+
+	/* el color r, g, b con opacidad a sobre el pixel p, sin premultiplicar */
+	private static int encima(int r, int g, int b, float a, int p) {
+		float ap = (p >>> 24) / 255f;
+		float af = a + ap * (1 - a);
+		if (af <= 0)
+			return 0;
+		float fp = ap * (1 - a);
+		int rf = Math.round((r * a + ((p >> 16) & 0xff) * fp) / af);
+		int gf = Math.round((g * a + ((p >> 8) & 0xff) * fp) / af);
+		int bf = Math.round((b * a + (p & 0xff) * fp) / af);
+		return Math.round(af * 255) << 24 | rf << 16 | gf << 8 | bf;
+	}
+
+	/**
+	* Devuelve los pixeles de la franja, renglon por renglon, en ARGB sin
+	* premultiplicar; no es una copia.
+	* @return los pixeles de la franja
+	*/
+	public int[] pixeles() {
+		return pixeles;
+	}
+
+	/** @return el ancho de la imagen */
+	public int getAncho() {
+		return ancho;
+	}
+
+	/** @return el alto de la imagen completa */
+	public int getAlto() {
+		return alto;
+	}
+
+	/** @return el primer renglon de la franja */
+	public int getRenglon() {
+		return renglon;
+	}
+
+	/** @return cuantos renglones tiene la franja */
+	public int getRenglones() {
+		return renglones;
+	}
+
+	/**
+	* Devuelve una imagen que comparte los pixeles de la franja, para
+	* escribirla con {@link javax.imageio.ImageIO}.
+	* @return la imagen, del tipo {@link BufferedImage#TYPE_INT_ARGB}
+	*/
+	public BufferedImage imagen() {
+		ColorModel modelo = ColorModel.getRGBdefault();
+		WritableRaster raster = Raster.createPackedRaster(
+			new DataBufferInt(pixeles, pixeles.length), ancho, renglones, ancho,
+			new int[] { 0xff0000, 0xff00, 0xff, 0xff000000 }, null);
+		return new BufferedImage(modelo, raster, false, null);
+	}
+}
@@ -1,9 +1,21 @@
 package mx.unam.ciencias.myp;
 
 import mx.unam.ciencias.edd.Lista;
-import mx.unam.ciencias.edd.ArbolDerivacion;
 import java.awt.Polygon;
 import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -14,29 +26,77 @@ import java.awt.Color;
 */
 public class Trazador {
 
-	private String graficasSVG;
-	private Lista<Lista<Interprete.Punto>> graficas;
-	private Lista<Polygon> listaPoligonos;
+	/** Las maneras de muestrear las funciones */
+	public enum Muestreo {
+		/** al menos 300 puntos igualmente espaciados en las partes visibles,
+		 * reutilizando los ya evaluados, ver {@link AlmacenMuestras} */
+		UNIFORME,
+		/** mas puntos donde la curva se dobla, ver {@link Interprete#evaluaAdaptativo} */
+		ADAPTATIVO,
+		/** primero, minimo, maximo y ultimo por columna de pixeles, ver
+		 * {@link Interprete#evaluaM4} */
+		M4
+	}
+
+	/* cuantos puntos por columna de pixeles se evaluan en el muestreo M4 */
+	private static final int SOBREMUESTREO = 8;
+
+	/** El error en pixeles con el que se simplifican las curvas si no se
+	 * dice otra cosa, ver {@link Puntos#simplifica} */
+	public static final double SIMPLIFICACION = 0.25;
+
+	/* cuantos pixeles fuera de la ventana todavia se consideran visibles,
+	   por el grosor de la linea */
+	private static final double MARGEN = 2;
+
+	/* las expresiones compiladas, compartidas por todos los trazadores */
+	private static final CacheExpresiones CACHE = new CacheExpresiones(512);
+
+	/* los hilos que evaluan y proyectan las funciones al mismo tiempo */
+	private static final ExecutorService HILOS = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "trazador");
+			t.setDaemon(true);
+			return t;
+		});
+
+	/* El resultado de trazar una funcion en las medidas actuales */
+	private static class Trazo {
+		Puntos puntos;
+		Lista<Polygon> tramos;
+	}
+
+	/* las muestras de cada funcion, con su interprete */
+	private Lista<AlmacenMuestras> almacenes;
+	private Lista<Puntos> graficas;
+	/* los tramos visibles de cada funcion, en pixeles */
+	private Lista<Lista<Polygon>> listaPoligonos;
 	private int ancho;
 	private int alto;
 	private double x0;
 	private double x1;
 	private double y0;
 	private double y1;
+	private Muestreo muestreo = Muestreo.UNIFORME;
+	private double simplificacion = SIMPLIFICACION;
+	private EscritorSVG.Formato formatoSVG = EscritorSVG.Formato.POLILINEA;
+	private int decimalesSVG = EscritorSVG.DECIMALES;
 
 	/** Constructor que recibe las dimensiones del trazador */
 	public Trazador(int ancho, int alto) {
-		this.graficas = new  Lista<Lista<Interprete.Punto>>();
-		this.listaPoligonos = new Lista<Polygon>();
+		this.almacenes = new Lista<AlmacenMuestras>();
+		this.graficas = new Lista<Puntos>();
+		this.listaPoligonos = new Lista<Lista<Polygon>>();
 		this.ancho = ancho;
 		this.alto = alto;
-		this.graficasSVG = getPlano();
 
 	}
 
 	/** Constructor que recibe las dimensiones del trazador */
 	public Trazador(int ancho, int alto, double x0, double x1, double y0, double y1) {
-		this.graficasSVG = String.format("<svg width='%d' height='%d'>",ancho, alto);
+		this.almacenes = new Lista<AlmacenMuestras>();
+		this.graficas = new Lista<Puntos>();
+		this.listaPoligonos = new Lista<Lista<Polygon>>();
 		this.ancho = ancho;
 		this.alto = alto;
 		this.x0 = x0;
@@ -47,18 +107,146 @@ public class Trazador {
 	}
 
 	/**
-	* el ploter toma una funcion y la compila
+	* el ploter toma una funcion y la compila, si ya se habia compilado
+	* antes la toma del cache de expresiones
 	*/
 	public void agregaFuncion(String funcion) throws  MalFormedFunctionException{
-		Lista<Muestra<String>> muestras = Analizador.procesa(funcion);
-		ArbolDerivacion<Muestra<Funcion>> arbol = Compilador.compila(muestras);
-	        	Interprete interprete = new Interprete(arbol);
-	        	Lista<Interprete.Punto> puntos = interprete.evalua(x0, x1);
-	       	listaPoligonos.agregaFinal(crearPoligono(puntos));
-	        	graficas.agregaFinal(puntos);
-	        	graficasSVG += bloqueSVG(puntos);
+	        	AlmacenMuestras almacen = new AlmacenMuestras(CACHE.obten(funcion));
+	        	almacenes.agregaFinal(almacen);
+	        	agrega(traza(almacen));
            	}
 
+	/* agrega el trazo de una funcion a las graficas */
+	private void agrega(Trazo trazo) {
+		listaPoligonos.agregaFinal(trazo.tramos);
+		graficas.agregaFinal(trazo.puntos);
+	}
+
+	/* evalua la funcion y la proyecta con las medidas actuales */
+	private Trazo traza(AlmacenMuestras almacen) {
+		Trazo trazo = new Trazo();
+		trazo.puntos = muestrea(almacen);
+		recorta(trazo.puntos, almacen.interprete());
+		simplifica(trazo.puntos);
+		trazo.tramos = crearPoligono(trazo.puntos);
+		return trazo;
+	}
+
+	/**
+	* Vuelve a trazar todas las funciones con las medidas y el muestreo
+	* actuales, al mismo tiempo, y junta los resultados en el orden en que
+	* se agregaron las funciones. Las graficas solo se reemplazan si todas
+	* se trazaron; si una falla o se interrumpe el hilo, las demas se
+	* cancelan y se quedan las que estaban.
+	*/
+	protected void retraza() {
+		Lista<Future<Trazo>> trazos = new Lista<>();
+		for (AlmacenMuestras almacen : almacenes) {
+			final AlmacenMuestras a = almacen;
+			trazos.agregaFinal(HILOS.submit(new Callable<Trazo>() {
+				@Override public Trazo call() {
+					return traza(a);
+				}
+			}));
+		}
+		Lista<Puntos> nuevasGraficas = new Lista<Puntos>();
+		Lista<Lista<Polygon>> nuevosPoligonos = new Lista<Lista<Polygon>>();
+		try {
+			for (Future<Trazo> f : trazos) {
+				Trazo trazo = f.get();
+				nuevasGraficas.agregaFinal(trazo.puntos);
+				nuevosPoligonos.agregaFinal(trazo.tramos);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException(ee.getCause());
+		} finally {
+			/* si se salio antes de tiempo los que faltan ya no sirven */
+			for (Future<Trazo> f : trazos)
+				f.cancel(true);
+		}
+		graficas = nuevasGraficas;
+		listaPoligonos = nuevosPoligonos;
+	}
+
+	/* evalua la funcion en el rango actual segun el muestreo elegido, las
+	   partes de la curva que quedan fuera de la ventana no se muestrean; el
+	   muestreo uniforme reutiliza las muestras del almacen */
+	private Puntos muestrea(AlmacenMuestras almacen) {
+		Interprete interprete = almacen.interprete();
+		double escalaX = ancho / (x1 - x0);
+		double escalaY = alto / (y1 - y0);
+		boolean escalaValida = escalaX > 0 && escalaY > 0 &&
+							   !Double.isInfinite(escalaX) && !Double.isInfinite(escalaY);
+		if (!escalaValida)
+			return interprete.evalua(x0, x1);
+		/* la ventana que proyecta crearPoligono, centrada en 0 */
+		double mitad = (y1 - y0) / 2 + MARGEN / escalaY;
+		if (muestreo == Muestreo.ADAPTATIVO)
+			return interprete.evaluaAdaptativo(x0, x1, -mitad, mitad, escalaX, escalaY,
+											   Interprete.TOLERANCIA);
+		if (muestreo == Muestreo.M4)
+			return interprete.evaluaM4(x0, x1, ancho, SOBREMUESTREO);
+		return almacen.muestrea(x0, x1, -mitad, mitad, Interprete.MUESTRAS);
+	}
+
+	/* deja solo las partes de la curva que se ven, cortada en los puntos
+	   que no son finitos y en los polos del interprete; en y la ventana es
+	   la misma que en muestrea y en x el intervalo que se muestreo */
+	private void recorta(Puntos puntos, Interprete interprete) {
+		double escalaX = ancho / (x1 - x0);
+		double escalaY = alto / (y1 - y0);
+		if (!(escalaX > 0) || !(escalaY > 0) || Double.isInfinite(escalaX) || Double.isInfinite(escalaY))
+			return;
+		double mitad = (y1 - y0) / 2 + MARGEN / escalaY;
+		double margenX = MARGEN / escalaX;
+		puntos.recorta(x0 - margenX, x1 + margenX, -mitad, mitad, interprete::salta);
+	}
+
+	/* quita los puntos que no cambian la linea mas de simplificacion
+	   pixeles, tanto en la interfaz como en el SVG */
+	private void simplifica(Puntos puntos) {
+		double escalaX = ancho / (x1 - x0);
+		double escalaY = alto / (y1 - y0);
+		if (simplificacion > 0 && escalaX > 0 && escalaY > 0 &&
+			!Double.isInfinite(escalaX) && !Double.isInfinite(escalaY))
+			puntos.simplifica(escalaX, escalaY, simplificacion);
+	}
+
+	/**
+	* Elige cuanto se pueden simplificar las curvas, las que ya estaban
+	* cambian hasta que se vuelvan a trazar.
+	* @param tolerancia el error maximo en pixeles, 0 para no simplificar
+	*/
+	public void setSimplificacion(double tolerancia) {
+		if (!(tolerancia >= 0))
+			throw new IllegalArgumentException("Tolerancia invalida: " + tolerancia);
+		this.simplificacion = tolerancia;
+	}
+
+	/**
+	* Elige como se muestrean las funciones que se agreguen despues, las
+	* que ya estaban cambian hasta que se vuelvan a trazar.
+	* @param muestreo la manera de muestrear
+	*/
+	public void setMuestreo(Muestreo muestreo) {
+		this.muestreo = muestreo;
+	}
+
+	/**
+	* Elige como se escriben las graficas en SVG.
+	* @param formato como se escriben las lineas
+	* @param decimales cuantos decimales se escriben de cada coordenada
+	*/
+	public void setFormatoSVG(EscritorSVG.Formato formato, int decimales) {
+		if (decimales < 0 || decimales > EscritorSVG.MAXIMO_DECIMALES)
+			throw new IllegalArgumentException("Decimales fuera de rango: " + decimales);
+		this.formatoSVG = formato;
+		this.decimalesSVG = decimales;
+	}
+
 	/* genera colores aleatorios para que se vean lindas las graficas */
 	private String randomColor() {
 		String [] colors = {
@@ -71,7 +259,9 @@ public class Trazador {
 
 	/**
 	* Reconsidera los argumentos  del ancho alto e intervalos, asi genera una grafica 
-	* de nueva dimension
+	* de nueva dimension. Todas las funciones se vuelven a trazar en el
+	* nuevo rango al mismo tiempo, cada una en un hilo; con el muestreo
+	* uniforme solo se evaluan los puntos que no estaban en su almacen.
 	*/
 	protected void setMedidasYrango(int ancho, int alto, double x0, double x1, double y0, double y1) {
 		if(this.ancho != ancho || this.alto != alto || this.x0 != x0 || this.x1 != x1 || this.y0 != y0 || this.y1 != y1) {
@@ -82,49 +272,34 @@ public class Trazador {
 			this.x1 = x1;
 			this.y0 = y0;
 			this.y1 = y1;
-			graficasSVG = getPlano();
-			for(Lista<Interprete.Punto> puntos  : graficas) {
-				listaPoligonos.agregaFinal(crearPoligono(puntos));
-	        			graficasSVG += bloqueSVG(puntos);
-			}
+			retraza();
 		}
 	}
 
-	private String getPlano() {
-		String plano =  String.format("<svg width='%d' height='%d'>",ancho, alto);
-		return plano;
-	}
-
-	private Polygon crearPoligono(Lista<Interprete.Punto> puntos) {
+	/* proyecta los puntos directo a los arreglos de los tramos */
+	private Lista<Polygon> crearPoligono(Puntos puntos) {
 		double deltaX = ancho / (x1-x0);
 		double deltaY = alto / (y1-y0);
-		double m1  =  ancho / 2;
-		double m2 = ancho / 2;
-		Polygon g = new Polygon();
-		for(Interprete.Punto p: puntos) {
-			int  x = (int)((ancho/2) + (p.getX() * deltaX));
-			int y  = (int)((alto/2) +  (-1 * p.getY() * deltaY ));
-			 g.addPoint(x,y);
-		}
-		return g;
+		return puntos.tramos(ancho / 2, deltaX, alto / 2, -deltaY);
 	}
 
 	/**
-	* devuelve una lista de {@link Polygon} para poder generar una grafica en la interafaz grafica
+	* devuelve por cada funcion la lista de {@link Polygon} de sus tramos
+	* visibles para poder generar una grafica en la interafaz grafica
 	* @return listaPiligonos la lista de poligonos (grafica) que se genera
 	*/
-	public Lista<Polygon> listaPoligonos () {
+	public Lista<Lista<Polygon>> listaPoligonos () {
 		return listaPoligonos;
 	}
 
            	/**
-	* Método que genera una grafica en svg de las listas de puntos 
+	* Método que escribe una grafica en svg de las listas de puntos 
 	* tomando las dimensiones correspondientes
 	* @param puntos la lista de puntos que se quiere hacer
-	* @return string una cadena con la representacion de la grafica dentro
-	*         de los limites
+	* @param svg el escritor del documento
+	* @throws IOException si la salida del escritor falla
 	*/
-	private String bloqueSVG(Lista<Interprete.Punto> puntos ) {
+	private void bloqueSVG(Puntos puntos, EscritorSVG svg) throws IOException {
 		String color = randomColor(puntos.getLongitud());
 		double deltaX = ancho / (x1-x0);
 		double deltaY = alto / (y1-y0);
@@ -133,11 +308,14 @@ public class Trazador {
 
 		double x = 0,y = 0;
 
-		String svg = "<g>";
-		svg += "<polyline fill='none' stroke='" + color + "' stroke-width='3'  points='";
-		for(Interprete.Punto p: puntos) {
-			x = p.getX();
-			y = p.getY();
+		svg.iniciaPolilinea(color);
+		for(int i = 0; i < puntos.getLongitud(); i++) {
+			x = puntos.getX(i);
+			y = puntos.getY(i);
+			if (Double.isNaN(x) || Double.isInfinite(x) || Double.isNaN(y) || Double.isInfinite(y)) {
+				svg.corta();
+				continue;
+			}
 			if (x  < nuevoX) {
 				x = Math.abs(x) - Math.abs(nuevoX);
 			} else {
@@ -147,18 +325,66 @@ public class Trazador {
 				x = -x;
 			x = (ancho/2) + (deltaX * x);
 			y =  (alto/2) + ( deltaY * y);
-			svg += "" + x+ "," + y + " ";
+			svg.punto(x, y);
 		}
-		return svg + "'/></g>";
+		svg.terminaPolilinea();
+	}
+
+	/**
+	* Devuelve el cache de expresiones compiladas, para consultar sus
+	* estadisticas.
+	* @return el cache compartido por los trazadores
+	*/
+	public static CacheExpresiones cache() {
+		return CACHE;
 	}
 
 	/**
 	* Método que limpia las listas de graficas tanto del SVG como de los poligonos
 	*/
 	public void limpiar() {
+		almacenes.limpia();
 		graficas.limpia();
 		listaPoligonos.limpia();
-		graficasSVG = String.format("<svg width='%d' height='%d'>",ancho, alto);
+	}
+
+	/**
+	* Escribe las graficas en formato SVG directamente a la salida, sin
+	* armar el documento en memoria.
+	* @param salida donde se escribe el documento, no se cierra
+	* @throws IOException si la salida falla
+	*/
+	public void escribeSVG(Appendable salida) throws IOException {
+		EscritorSVG svg = new EscritorSVG(salida, formatoSVG, decimalesSVG);
+		svg.inicia(ancho, alto);
+		for (Puntos puntos : graficas)
+			bloqueSVG(puntos, svg);
+		svg.termina();
+	}
+
+	/**
+	* Guarda las graficas como PNG de las medidas del trazador, dibujadas
+	* con el {@link Rasterizador} por franjas, ver {@link EscritorPNG}.
+	* @param archivo el archivo donde se guardan
+	* @throws IOException si no se puede escribir el archivo
+	*/
+	public void guardaPNG(File archivo) throws IOException {
+		new EscritorPNG(ancho, alto).escribe(listaPoligonos, archivo);
+	}
+
+	/**
+	* Guarda las graficas en formato SVG en el archivo; si su nombre termina
+	* en <code>.svgz</code> se comprime con gzip.
+	* @param archivo el archivo donde se guardan
+	* @throws IOException si no se puede escribir el archivo
+	*/
+	public void guardaSVG(File archivo) throws IOException {
+		OutputStream bytes = Files.newOutputStream(archivo.toPath());
+		if (archivo.getName().toLowerCase().endsWith(".svgz"))
+			bytes = new GZIPOutputStream(bytes, 1 << 16);
+		try (Writer salida = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+			escribeSVG(salida);
+		}
 	}
 
 	/**
@@ -167,7 +393,14 @@ public class Trazador {
 		mediante el formato SVG
 	*/
 	public String getSVG() {
-		return graficasSVG + "</svg>";
+		StringBuilder sb = new StringBuilder();
+		try {
+			escribeSVG(sb);
+		} catch (IOException ioe) {
+			/* un StringBuilder no lanza IOException */
+			throw new IllegalStateException(ioe);
+		}
+		return sb.toString();
 	}
 
 	 private String randomColor(int i) {
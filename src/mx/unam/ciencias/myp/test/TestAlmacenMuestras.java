@@ -0,0 +1,77 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link AlmacenMuestras}
+*/
+public class TestAlmacenMuestras {
+
+	private CacheExpresiones cache;
+
+	public TestAlmacenMuestras() {
+		cache = new CacheExpresiones(16);
+	}
+
+	@Test public void testRecorre() throws MalFormedFunctionException {
+		AlmacenMuestras almacen = new AlmacenMuestras(cache.obten("(sin x)"));
+		Puntos puntos = almacen.muestrea(-10, 10, -2, 2, 300);
+		Assert.assertTrue(puntos.getLongitud() >= 300);
+		Assert.assertEquals(puntos.getLongitud(), almacen.evaluaciones());
+		/* la misma ventana no evalua nada */
+		almacen.muestrea(-10, 10, -2, 2, 300);
+		Assert.assertEquals(puntos.getLongitud(), almacen.evaluaciones());
+		/* recorrer un 10% solo evalua la franja nueva */
+		long antes = almacen.evaluaciones();
+		Puntos recorridos = almacen.muestrea(-8, 12, -2, 2, 300);
+		long nuevas = almacen.evaluaciones() - antes;
+		Assert.assertTrue(nuevas > 0 && nuevas <= recorridos.getLongitud() / 10 + 2);
+	}
+
+	@Test public void testAcerca() throws MalFormedFunctionException {
+		AlmacenMuestras almacen = new AlmacenMuestras(cache.obten("(* x (cos x))"));
+		almacen.muestrea(-10, 10, -20, 20, 300);
+		long antes = almacen.evaluaciones();
+		/* al doble de resolucion la mitad de los puntos ya estaban */
+		Puntos puntos = almacen.muestrea(-5, 5, -20, 20, 300);
+		long nuevas = almacen.evaluaciones() - antes;
+		Assert.assertTrue(nuevas <= puntos.getLongitud() / 2 + 1);
+		/* y al regresar al nivel anterior en la misma franja, ninguno falta */
+		antes = almacen.evaluaciones();
+		almacen.muestrea(-4, 4, -20, 20, 150);
+		Assert.assertEquals(antes, almacen.evaluaciones());
+	}
+
+	@Test public void testRecorta() throws MalFormedFunctionException {
+		AlmacenMuestras almacen = new AlmacenMuestras(cache.obten("(^ x 3)"));
+		Puntos puntos = almacen.muestrea(-10, 10, -5, 5, 300);
+		/* la curva solo se ve cerca del origen */
+		Assert.assertTrue(puntos.getLongitud() < 150);
+		/* con una ventana en y mas alta se evalua lo que antes se recorto */
+		Puntos todos = almacen.muestrea(-10, 10, -2000, 2000, 300);
+		Assert.assertTrue(todos.getLongitud() >= 300);
+		Assert.assertEquals(todos.getLongitud(), almacen.evaluaciones());
+	}
+
+	@Test public void testAleja() throws MalFormedFunctionException {
+		AlmacenMuestras almacen = new AlmacenMuestras(cache.obten("(* x (sin x))"));
+		almacen.muestrea(-10, 10, -20, 20, 300);
+		almacen.muestrea(-0.01, 0.01, -20, 20, 300);
+		/* regresar a la ventana original no evalua nada */
+		long antes = almacen.evaluaciones();
+		almacen.muestrea(-10, 10, -20, 20, 300);
+		Assert.assertEquals(antes, almacen.evaluaciones());
+		/* alejar mas solo evalua lo que queda fuera de [-10, 10] */
+		Puntos puntos = almacen.muestrea(-100, 100, -2000, 2000, 300);
+		long nuevas = almacen.evaluaciones() - antes;
+		Assert.assertTrue(nuevas > 0 && nuevas < puntos.getLongitud() * 0.95);
+	}
+
+	@Test public void testAcotado() throws MalFormedFunctionException {
+		AlmacenMuestras almacen = new AlmacenMuestras(cache.obten("(cos x)"));
+		for (int i = 0; i < 600; i++)
+			almacen.muestrea(i * 100, i * 100 + 100, -2, 2, 300);
+		Assert.assertTrue(almacen.celdas() <= AlmacenMuestras.MAXIMO_CELDAS);
+	}
+}
@@ -0,0 +1,38 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link CacheExpresiones}
+*/
+public class TestCacheExpresiones {
+
+	@Test public void testNormaliza() {
+		Assert.assertEquals("( sin ( * 2 x ) )", CacheExpresiones.normaliza("(SIN   (*  2 x))"));
+		Assert.assertEquals(CacheExpresiones.normaliza("( + x 1 )"),
+							CacheExpresiones.normaliza("(+ x\t1)"));
+	}
+
+	@Test public void testAciertos() throws MalFormedFunctionException {
+		CacheExpresiones cache = new CacheExpresiones(8);
+		cache.obten("(* (+ 2 3) x)");
+		cache.obten("( *  (+ 2 3) x )");
+		Assert.assertTrue(cache.aciertos() == 1 && cache.fallos() == 1);
+		/* misma forma canonica */
+		cache.obten("(* x 5)");
+		Assert.assertTrue(cache.aciertosCanonicos() == 1 && cache.fallos() == 1);
+	}
+
+	@Test public void testDesaloja() throws MalFormedFunctionException {
+		CacheExpresiones cache = new CacheExpresiones(4);
+		for (int i = 0; i < 10; i++)
+			cache.obten("(+ x " + i + ")");
+		Assert.assertTrue(cache.fallos() == 10);
+		Assert.assertTrue(cache.desalojos() > 0);
+		cache.obten("(+ x 9)");
+		Assert.assertTrue(cache.aciertos() == 1);
+		cache.obten("(+ x 0)");
+		Assert.assertTrue(cache.fallos() == 11);
+	}
+}
@@ -0,0 +1,64 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.edd.ArbolDerivacion;
+import mx.unam.ciencias.myp.*;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.Random;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Compilador}
+*/
+public class TestCompilador {
+
+	private Random semilla;
+
+	public TestCompilador() {
+		semilla = new Random();
+	}
+
+	private ArbolDerivacion<Muestra<Funcion>> compila(String expresion) throws MalFormedFunctionException {
+		return Compilador.compila(Analizador.procesa(expresion));
+	}
+
+	@Test public void testDoblaConstantes() throws MalFormedFunctionException {
+		ArbolDerivacion<Muestra<Funcion>> arbol = compila("(* (+ 2 3) x)");
+		Assert.assertTrue(arbol.getElementos() == 3);
+		Assert.assertEquals("5.0 x *", new Programa(arbol).toString());
+		arbol = compila("(+ (cos 0) (* 2 4))");
+		Assert.assertTrue(arbol.getElementos() == 1);
+		Assert.assertEquals(9, new Programa(arbol).evalua(semilla.nextDouble()), 0);
+	}
+
+	@Test public void testIdentidades() throws MalFormedFunctionException {
+		Assert.assertEquals("x", new Programa(compila("(+ (* x 1) 0)")).toString());
+		Assert.assertEquals("0.0", new Programa(compila("(* (sin x) 0)")).toString());
+		Assert.assertEquals("x sen", new Programa(compila("(/ (sin (^ x 1)) (- 3 2))")).toString());
+		Assert.assertEquals("1.0", new Programa(compila("(^ (tan x) 0)")).toString());
+	}
+
+	@Test public void testPotenciaEntera() throws MalFormedFunctionException {
+		Programa p = new Programa(compila("(+ (^ (+ x 1) 2) (^ x -3))"));
+		Assert.assertEquals("x 1.0 + 2 ^ x -3 ^ +", p.toString());
+		for (int i = 0; i < 100; i++) {
+			double x = semilla.nextDouble() * 10 - 5;
+			double a = Math.pow(x + 1, 2), b = Math.pow(x, -3);
+			/* cerca de 0 x^-3 es enorme, el error se mide relativo a los
+			   sumandos y no a la suma, que puede ser casi 0 */
+			Assert.assertEquals(a + b, p.evalua(x), 1e-12 * (Math.abs(a) + Math.abs(b)));
+		}
+	}
+
+	@Test public void testSubexpresionesComunes() throws MalFormedFunctionException {
+		String e = "(+ (sin (* 2 x)) (* (sin (* 2 x)) (sin (* 2 x))))";
+		GrafoExpresion grafo = new GrafoExpresion(compila(e));
+		/* 2, x, (* 2 x), sin, el producto y la suma */
+		Assert.assertTrue(grafo.getElementos() == 6);
+		Programa p = new Programa(grafo);
+		Assert.assertEquals("2.0 x * sen ->0 <-0 <-0 * +", p.toString());
+		for (int i = 0; i < 100; i++) {
+			double x = semilla.nextDouble() * 10 - 5;
+			double s = Math.sin(2 * x);
+			Assert.assertEquals(s + s * s, p.evalua(x), 1e-12);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link EscritorPNG}
+*/
+public class TestEscritorPNG {
+
+	@Test public void testFranjas() throws IOException {
+		/* suficientemente alta para que haya varias franjas */
+		int ancho = 300, alto = 3000;
+		Lista<Lista<Polygon>> poligonos = new Lista<>();
+		for (int k = 0; k < 3; k++) {
+			Polygon p = new Polygon();
+			for (int y = 0; y < alto; y += 7)
+				p.addPoint((int) (150 + 120 * Math.sin(y / (40.0 + k * 13))), y);
+			Lista<Polygon> grafica = new Lista<>();
+			grafica.agregaFinal(p);
+			poligonos.agregaFinal(grafica);
+		}
+		Rasterizador completo = new Rasterizador(ancho, alto);
+		completo.dibuja(poligonos);
+		File archivo = File.createTempFile("grafica", ".png");
+		try {
+			new EscritorPNG(ancho, alto).escribe(poligonos, archivo);
+			BufferedImage leida = ImageIO.read(archivo);
+			Assert.assertEquals(ancho, leida.getWidth());
+			Assert.assertEquals(alto, leida.getHeight());
+			int[] pixeles = completo.pixeles();
+			for (int y = 0; y < alto; y++)
+				for (int x = 0; x < ancho; x++) {
+					int p = pixeles[y * ancho + x];
+					/* los transparentes pueden leerse con otro color */
+					if (p >>> 24 != 0)
+						Assert.assertEquals(p, leida.getRGB(x, y));
+					else
+						Assert.assertEquals(0, leida.getRGB(x, y) >>> 24);
+				}
+		} finally {
+			archivo.delete();
+		}
+	}
+}
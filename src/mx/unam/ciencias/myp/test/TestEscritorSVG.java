@@ -0,0 +1,119 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link EscritorSVG}
+*/
+public class TestEscritorSVG {
+
+	private static String numero(double d) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		EscritorSVG svg = new EscritorSVG(sb);
+		svg.numero(d);
+		svg.vacia();
+		return sb.toString();
+	}
+
+	@Test public void testNumero() throws IOException {
+		Assert.assertEquals("0", numero(0));
+		Assert.assertEquals("1.5", numero(1.5));
+		Assert.assertEquals("-20", numero(-20));
+		Assert.assertEquals("123.457", numero(123.4567));
+		Assert.assertEquals("0.001", numero(0.0009));
+		Assert.assertEquals("0", numero(-0.0004));
+		Assert.assertEquals("NaN", numero(Double.NaN));
+	}
+
+	@Test public void testDocumento() throws IOException {
+		StringWriter salida = new StringWriter();
+		EscritorSVG svg = new EscritorSVG(salida);
+		svg.inicia(300, 200);
+		svg.iniciaPolilinea("#007AFF");
+		svg.punto(1, 2.25);
+		svg.punto(3.5, -4);
+		svg.terminaPolilinea();
+		svg.termina();
+		Assert.assertEquals("<svg width='300' height='200'><g><polyline fill='none' stroke='#007AFF'" +
+							" stroke-width='3'  points='1,2.25 3.5,-4 '/></g></svg>", salida.toString());
+	}
+
+	@Test public void testLargo() throws IOException {
+		/* mas puntos de los que caben en el bufer */
+		StringBuilder esperado = new StringBuilder();
+		StringBuilder salida = new StringBuilder();
+		EscritorSVG svg = new EscritorSVG(salida);
+		for (int i = 0; i < 5000; i++) {
+			svg.punto(i, i / 4.0);
+			esperado.append(i).append(',').append(numero(i / 4.0)).append(' ');
+		}
+		svg.vacia();
+		Assert.assertEquals(esperado.toString(), salida.toString());
+	}
+
+	private static String trayectoria(int decimales, double... puntos) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		EscritorSVG svg = new EscritorSVG(sb, EscritorSVG.Formato.TRAYECTORIA, decimales);
+		svg.iniciaPolilinea("red");
+		for (int i = 0; i < puntos.length; i += 2)
+			svg.punto(puntos[i], puntos[i + 1]);
+		svg.terminaPolilinea();
+		svg.vacia();
+		String s = sb.toString();
+		return s.substring(s.indexOf(" d='") + 4, s.length() - 3);
+	}
+
+	@Test public void testTrayectoria() throws IOException {
+		Assert.assertEquals("M10 20l5-3 .5 0", trayectoria(1, 10, 20, 15, 17, 15.5, 17));
+		/* repetidos al redondear */
+		Assert.assertEquals("M1 1l2 2", trayectoria(0, 1, 1, 1.2, 0.9, 3, 3));
+		/* alineados, pero no si la linea regresa */
+		Assert.assertEquals("M0 0l8 4", trayectoria(0, 0, 0, 2, 1, 4, 2, 8, 4));
+		Assert.assertEquals("M0 0l2 0-1 0", trayectoria(0, 0, 0, 2, 0, 1, 0));
+		/* los puntos que no son numeros cortan la linea */
+		Assert.assertEquals("M0 0l1 1M3 3l1-1", trayectoria(0, 0, 0, 1, 1, Double.NaN, 5, 3, 3, 4, 2));
+	}
+
+	@Test public void testCorta() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		EscritorSVG svg = new EscritorSVG(sb);
+		svg.iniciaPolilinea("red");
+		svg.corta();
+		svg.punto(1, 2);
+		svg.punto(3, 4);
+		svg.corta();
+		svg.punto(5, 6);
+		svg.punto(7, 8);
+		svg.terminaPolilinea();
+		svg.vacia();
+		String polilinea = "<g><polyline fill='none' stroke='red' stroke-width='3'  points='";
+		Assert.assertEquals(polilinea + "1,2 3,4 '/></g>" + polilinea + "5,6 7,8 '/></g>", sb.toString());
+	}
+
+	@Test public void testSVGZ() throws IOException, MalFormedFunctionException {
+		Trazador trazador = new Trazador(300, 200, -5, 5, -5, 5);
+		trazador.setFormatoSVG(EscritorSVG.Formato.TRAYECTORIA, 2);
+		trazador.agregaFuncion("(* x x)");
+		File archivo = File.createTempFile("grafica", ".svgz");
+		try {
+			trazador.guardaSVG(archivo);
+			ByteArrayOutputStream leido = new ByteArrayOutputStream();
+			try (InputStream entrada = new GZIPInputStream(Files.newInputStream(archivo.toPath()))) {
+				entrada.transferTo(leido);
+			}
+			Assert.assertEquals(trazador.getSVG(), new String(leido.toByteArray(), StandardCharsets.UTF_8));
+			Assert.assertTrue(archivo.length() < trazador.getSVG().length());
+		} finally {
+			archivo.delete();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Interprete}
+*/
+public class TestInterprete {
+
+	private Random semilla;
+	private CacheExpresiones cache;
+
+	public TestInterprete() {
+		semilla = new Random();
+		cache = new CacheExpresiones(16);
+	}
+
+	@Test public void testEvaluaParalelo() throws MalFormedFunctionException {
+		String e = "(* (sin (* 3 x)) (- x (^ x 2)))";
+		Interprete interprete = cache.obten(e);
+		Programa programa = new Programa(Compilador.compila(Analizador.procesa(e)));
+		int n = 50000 + semilla.nextInt(50000);
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		interprete.evaluaParalelo(-10, 10, xs, ys);
+		double incremento = 20.0 / n;
+		for (int i = 0; i < n; i++) {
+			Assert.assertEquals(-10 + incremento * i, xs[i], 0);
+			Assert.assertEquals(programa.evalua(xs[i]), ys[i], 1e-12);
+		}
+	}
+
+	@Test public void testAdaptativoPresupuesto() throws MalFormedFunctionException {
+		/* oscila mas rapido de lo que se puede muestrear */
+		Interprete interprete = cache.obten("(sin (* 1000 x))");
+		Puntos puntos = interprete.evaluaAdaptativo(-10, 10, 1e6, 1e6, 0.01);
+		Assert.assertTrue(puntos.getLongitud() <= Interprete.MAXIMO_PUNTOS);
+		Assert.assertEquals(-10, puntos.getX(0), 0);
+		Assert.assertEquals(10, puntos.getX(puntos.getLongitud() - 1), 0);
+
+		/* al acabarse los puntos todo el intervalo sigue refinado, como
+		   en una imagen de 4000 pixeles de ancho */
+		interprete = cache.obten("(* 4 (sin (* 200 x)))");
+		puntos = interprete.evaluaAdaptativo(-6.4, 6.4, -4.5, 4.5, 4000 / 12.8, 600 / 9.0, 0.5);
+		Assert.assertEquals(Interprete.MAXIMO_PUNTOS, puntos.getLongitud());
+		double segmento = 12.8 / Interprete.SEGMENTOS_INICIALES;
+		int[] octavos = new int[8];
+		for (int i = 0; i < puntos.getLongitud(); i++) {
+			octavos[Math.min(7, (int) ((puntos.getX(i) + 6.4) / 1.6))]++;
+			/* ningun segmento inicial se queda sin partir */
+			if (i > 0)
+				Assert.assertTrue(puntos.getX(i) - puntos.getX(i - 1) < segmento * 0.75);
+		}
+		for (int octavo : octavos)
+			Assert.assertTrue(octavo > Interprete.MAXIMO_PUNTOS / 16);
+	}
+
+	@Test public void testAdaptativoRecta() throws MalFormedFunctionException {
+		/* en una recta el punto medio siempre esta en la cuerda */
+		Interprete interprete = cache.obten("(+ (* 3 x) 1)");
+		Puntos puntos = interprete.evaluaAdaptativo(-4, 4, 100, 100);
+		Assert.assertEquals(Interprete.SEGMENTOS_INICIALES + 1, puntos.getLongitud());
+		for (int i = 0; i < puntos.getLongitud(); i++)
+			Assert.assertEquals(-4 + 8.0 * i / Interprete.SEGMENTOS_INICIALES, puntos.getX(i), 1e-12);
+	}
+
+	@Test public void testAdaptativoPolos() throws MalFormedFunctionException {
+		Interprete interprete = cache.obten("(tan x)");
+		double x0 = -6.4, x1 = 6.4;
+		Puntos puntos = interprete.evaluaAdaptativo(x0, x1, 1e5, 50);
+		/* ningun segmento inicial se parte mas de PROFUNDIDAD_MAXIMA veces */
+		double minimo = (x1 - x0) / Interprete.SEGMENTOS_INICIALES / (1 << Interprete.PROFUNDIDAD_MAXIMA);
+		double menor = Double.POSITIVE_INFINITY;
+		double cercaDelPolo = 0;
+		for (int i = 1; i < puntos.getLongitud(); i++) {
+			double paso = puntos.getX(i) - puntos.getX(i - 1);
+			Assert.assertTrue(paso > 0);
+			Assert.assertTrue(paso >= minimo * (1 - 1e-9));
+			if (paso < menor) {
+				menor = paso;
+				cercaDelPolo = puntos.getX(i);
+			}
+		}
+		/* y los pasos mas chicos, de la profundidad maxima, estan en un polo */
+		Assert.assertEquals(minimo, menor, minimo * 1e-6);
+		double polo = Math.PI / 2 + Math.PI * Math.round((cercaDelPolo - Math.PI / 2) / Math.PI);
+		Assert.assertTrue(Math.abs(cercaDelPolo - polo) < 0.01);
+		/* cerca de 0 la tangente es casi recta y no hace falta refinar */
+		int cercaDeCero = 0;
+		for (int i = 0; i < puntos.getLongitud(); i++)
+			if (Math.abs(puntos.getX(i)) < 0.2)
+				cercaDeCero++;
+		Assert.assertTrue(cercaDeCero < 20);
+	}
+
+	@Test public void testM4() throws MalFormedFunctionException {
+		Interprete interprete = cache.obten("(* x (sin (* 40 x)))");
+		int columnas = 200 + semilla.nextInt(200), sobremuestreo = 8;
+		Puntos puntos = interprete.evaluaM4(-5, 5, columnas, sobremuestreo);
+		/* todos los puntos que se evaluaron, para compararlos */
+		double[] xs = new double[columnas * sobremuestreo];
+		double[] ys = new double[xs.length];
+		interprete.evaluaParalelo(-5, 5, xs, ys);
+		int[] porColumna = new int[columnas];
+		boolean[] queda = new boolean[xs.length];
+		for (int i = 0; i < puntos.getLongitud(); i++) {
+			/* en orden y sin repetir */
+			if (i > 0)
+				Assert.assertTrue(puntos.getX(i) > puntos.getX(i - 1));
+			int k = Arrays.binarySearch(xs, puntos.getX(i));
+			Assert.assertTrue(k >= 0);
+			Assert.assertEquals(ys[k], puntos.getY(i), 0);
+			queda[k] = true;
+			porColumna[k / sobremuestreo]++;
+		}
+		for (int c = 0; c < columnas; c++) {
+			Assert.assertTrue(porColumna[c] >= 1 && porColumna[c] <= 4);
+			int inicio = c * sobremuestreo, fin = inicio + sobremuestreo - 1;
+			double minimo = Double.POSITIVE_INFINITY, maximo = Double.NEGATIVE_INFINITY;
+			for (int k = inicio; k <= fin; k++) {
+				minimo = Math.min(minimo, ys[k]);
+				maximo = Math.max(maximo, ys[k]);
+			}
+			/* el primero, el ultimo, el minimo y el maximo sobreviven */
+			Assert.assertTrue(queda[inicio] && queda[fin]);
+			boolean hayMinimo = false, hayMaximo = false;
+			for (int k = inicio; k <= fin; k++) {
+				hayMinimo |= queda[k] && ys[k] == minimo;
+				hayMaximo |= queda[k] && ys[k] == maximo;
+			}
+			Assert.assertTrue(hayMinimo && hayMaximo);
+		}
+	}
+
+	@Test public void testVisible() throws MalFormedFunctionException {
+		/* en [-5, 5] solo se ve cerca del origen, |x| <= 5^(1/3) */
+		Interprete interprete = cache.obten("(^ x 3)");
+		int n = 300;
+		double borde = Math.cbrt(5), paso = 20.0 / n;
+		Puntos uniforme = interprete.evalua(-10, 10);
+		Puntos visible = interprete.evaluaVisible(-10, 10, -5, 5, n);
+		int fueraUniforme = 0, fueraVisible = 0;
+		for (int i = 0; i < uniforme.getLongitud(); i++)
+			if (Math.abs(uniforme.getX(i)) > borde + paso)
+				fueraUniforme++;
+		double anterior = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < visible.getLongitud(); i++) {
+			double x = visible.getX(i);
+			Assert.assertTrue(x > anterior);
+			Assert.assertEquals(interprete.evalua(x), visible.getY(i), 0);
+			/* lo que no se ve solo aporta los extremos */
+			if (Math.abs(x) > borde + paso)
+				fueraVisible++;
+			else if (i > 0 && Math.abs(anterior) <= borde + paso)
+				/* y lo que se ve queda al menos tan fino como el uniforme */
+				Assert.assertTrue(x - anterior <= paso + 1e-12);
+			anterior = x;
+		}
+		Assert.assertTrue(fueraUniforme > 200);
+		Assert.assertTrue(fueraVisible <= 2);
+		/* la parte visible se cubre de borde a borde */
+		Assert.assertTrue(visible.getX(1) <= -borde && visible.getX(visible.getLongitud() - 2) >= borde);
+	}
+}
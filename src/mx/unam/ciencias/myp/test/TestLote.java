@@ -0,0 +1,70 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Lote}
+*/
+public class TestLote {
+
+	/* nos dice si las opciones se rechazan */
+	private static boolean invalidas(String... args) {
+		try {
+			new Lote().opciones(args);
+			return false;
+		} catch (IllegalArgumentException iae) {
+			return true;
+		}
+	}
+
+	@Test public void testOpciones() {
+		Assert.assertEquals("f.txt", new Lote().opciones(new String[] {
+			"-x", "-1", "3", "f.txt", "-formato", "svgz", "-muestreo", "m4", "-ancho", "10"
+		}));
+		/* los intervalos van de menor a mayor */
+		Assert.assertTrue(invalidas("f.txt", "-x", "3", "-1"));
+		Assert.assertTrue(invalidas("f.txt", "-y", "2", "2"));
+		Assert.assertTrue(invalidas("f.txt", "-ancho", "0"));
+		Assert.assertTrue(invalidas("f.txt", "-simplifica", "-1"));
+		/* valores que no son numeros, que no existen o que faltan */
+		Assert.assertTrue(invalidas("f.txt", "-alto", "mucho"));
+		Assert.assertTrue(invalidas("f.txt", "-formato", "gif"));
+		Assert.assertTrue(invalidas("f.txt", "-x", "1"));
+		Assert.assertTrue(invalidas("f.txt", "-hilos"));
+		Assert.assertTrue(invalidas("f.txt", "-zoom", "2"));
+		/* sin archivo o con dos */
+		Assert.assertTrue(invalidas("-ancho", "10"));
+		Assert.assertTrue(invalidas("f.txt", "g.txt"));
+	}
+
+	@Test public void testExpresiones() {
+		String texto = "(sin x)\r\n\n# un comentario\n   \n  (* x x)  \r\n#(cos x)\r\n(tan x)";
+		Lote.Expresiones expresiones = new Lote.Expresiones(
+			ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8)));
+		Assert.assertEquals("(sin x)", expresiones.siguiente());
+		Assert.assertEquals(1, expresiones.getRenglon());
+		Assert.assertEquals("(* x x)", expresiones.siguiente());
+		Assert.assertEquals(5, expresiones.getRenglon());
+		/* el ultimo renglon no tiene salto */
+		Assert.assertEquals("(tan x)", expresiones.siguiente());
+		Assert.assertEquals(7, expresiones.getRenglon());
+		Assert.assertNull(expresiones.siguiente());
+
+		/* un renglon mas largo que el bufer y con caracteres de varios bytes */
+		StringBuilder largo = new StringBuilder("(+ x ");
+		for (int i = 0; i < 300; i++)
+			largo.append("(* 1 ");
+		largo.append("x");
+		for (int i = 0; i < 300; i++)
+			largo.append(')');
+		largo.append(')');
+		expresiones = new Lote.Expresiones(ByteBuffer.wrap(
+			("# ñandú\n" + largo + "\n").getBytes(StandardCharsets.UTF_8)));
+		Assert.assertEquals(largo.toString(), expresiones.siguiente());
+		Assert.assertEquals(2, expresiones.getRenglon());
+		Assert.assertNull(expresiones.siguiente());
+	}
+}
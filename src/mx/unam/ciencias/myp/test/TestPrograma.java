@@ -0,0 +1,141 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import org.junit.Assert;
+import org.junit.Test;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Programa}
+*/
+public class TestPrograma {
+
+	private Random semilla;
+
+	public TestPrograma() {
+		semilla = new Random();
+	}
+
+	/* compila una expresion hasta el programa postfijo */
+	private Programa programa(String expresion) throws MalFormedFunctionException {
+		return new Programa(Compilador.compila(Analizador.procesa(expresion)));
+	}
+
+	@Test public void testPolinomio() throws MalFormedFunctionException {
+		Programa p = programa("(* (* (- x 2) (+ x 2)) x)");
+		for (int i = 0; i < 100; i++) {
+			double x = semilla.nextDouble() * 20 - 10;
+			Assert.assertEquals((x - 2) * (x + 2) * x, p.evalua(x), 1e-9);
+		}
+	}
+
+	@Test public void testOrdenOperandos() throws MalFormedFunctionException {
+		Programa p = programa("(- (+ 2 3) x)");
+		Assert.assertEquals(5 - 1.5, p.evalua(1.5), 0);
+		p = programa("(/ (* 2 x) 4)");
+		Assert.assertEquals(1.5, p.evalua(3), 0);
+	}
+
+	@Test public void testTrigonometricas() throws MalFormedFunctionException {
+		Programa p = programa("(+ (sin (* 2 x)) (cos -x))");
+		double x = semilla.nextDouble();
+		Assert.assertEquals(Math.sin(2 * x) + Math.cos(-x), p.evalua(x), 1e-12);
+		Assert.assertTrue(Double.isInfinite(programa("(/ 1 x)").evalua(0)));
+	}
+
+	@Test public void testEvaluacionPorColumnas() throws MalFormedFunctionException {
+		Programa p = programa("(+ (/ 1 (tan x)) (* (tan x) (- x -x)))");
+		int n = 1000 + semilla.nextInt(1000);
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++)
+			xs[i] = semilla.nextDouble() * 10 - 5;
+		xs[0] = 0;
+		p.evalua(xs, ys);
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals(p.evalua(xs[i]), ys[i], 0);
+	}
+
+	@Test public void testGeneradores() throws MalFormedFunctionException {
+		String[] expresiones = {"(* (* (- x 2) (+ x 2)) x)", "(^ (sec -x) 2)",
+								"(/ (ctg x) (csc (- x 1)))", "(+ 0 (* 1 x))",
+								"(^ (- x 1) -5)", "(^ x 3)", "(^ x 0.5)",
+								"(+ (sin (* 2 x)) (* (sin (* 2 x)) (cos (sin (* 2 x)))))"};
+		for (String e : expresiones) {
+			Programa p = programa(e);
+			DoubleUnaryOperator f = GeneradorBytecode.genera(p);
+			DoubleUnaryOperator g = GeneradorCierres.genera(p);
+			for (int i = 0; i < 100; i++) {
+				double x = semilla.nextDouble() * 10 - 5;
+				Assert.assertEquals(p.evalua(x), f.applyAsDouble(x), 0);
+				Assert.assertEquals(p.evalua(x), g.applyAsDouble(x), 0);
+			}
+		}
+	}
+
+	@Test public void testVariosHilos() throws Exception {
+		/* con subexpresiones comunes, asi tambien se usan las ranuras */
+		final Programa p = programa("(+ (sin (* 2 x)) (* (sin (* 2 x)) (sin (* 2 x))))");
+		final double[] xs = new double[2000];
+		final double[] esperados = new double[xs.length];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = semilla.nextDouble() * 20 - 10;
+			double s = Math.sin(2 * xs[i]);
+			esperados[i] = s + s * s;
+		}
+		Thread[] hilos = new Thread[4];
+		final double[][] puntos = new double[hilos.length][xs.length];
+		final double[][] bloques = new double[hilos.length][xs.length];
+		for (int h = 0; h < hilos.length; h++) {
+			final int k = h;
+			hilos[h] = new Thread(() -> {
+				for (int vuelta = 0; vuelta < 20; vuelta++) {
+					for (int i = 0; i < xs.length; i++)
+						puntos[k][i] = p.evalua(xs[i]);
+					p.evalua(xs, bloques[k]);
+				}
+			});
+			hilos[h].start();
+		}
+		for (Thread hilo : hilos)
+			hilo.join();
+		for (int h = 0; h < hilos.length; h++)
+			for (int i = 0; i < xs.length; i++) {
+				Assert.assertEquals(esperados[i], puntos[h][i], 1e-12);
+				Assert.assertEquals(esperados[i], bloques[h][i], 1e-12);
+			}
+	}
+
+	@Test public void testIntervalos() throws MalFormedFunctionException {
+		String[] expresiones = {
+			"(* (sin (* 3 x)) (- x (^ x 2)))", "(tan x)", "(/ 1 (- x 1))",
+			"(^ (- x 1) 4)", "(^ x -3)", "(+ (sec x) (csc x))", "(ctg (* 2 x))",
+			"(^ x 0.5)", "(cos (* x x))"
+		};
+		double[] cota = new double[2];
+		for (String e : expresiones) {
+			Programa p = programa(e);
+			for (int i = 0; i < 200; i++) {
+				double a = semilla.nextDouble() * 20 - 10;
+				double b = a + semilla.nextDouble() * (i % 2 == 0 ? 0.1 : 4);
+				p.evaluaIntervalo(a, b, cota);
+				Assert.assertTrue(e, cota[0] <= cota[1]);
+				for (int j = 0; j <= 50; j++) {
+					double y = p.evalua(Math.min(a + (b - a) * j / 50, b));
+					if (Double.isNaN(y))
+						continue;
+					Assert.assertTrue(e + " en [" + a + ", " + b + "]", cota[0] <= y && y <= cota[1]);
+				}
+			}
+		}
+		/* un polo adentro del intervalo */
+		programa("(tan x)").evaluaIntervalo(1, 2, cota);
+		Assert.assertTrue(Double.isInfinite(cota[0]) && Double.isInfinite(cota[1]));
+		programa("(/ 1 x)").evaluaIntervalo(-0.5, 0.5, cota);
+		Assert.assertTrue(Double.isInfinite(cota[0]) && Double.isInfinite(cota[1]));
+		/* sin polos la cota no se dispara */
+		programa("(+ (sin x) 2)").evaluaIntervalo(0, 7, cota);
+		Assert.assertEquals(1, cota[0], 1e-12);
+		Assert.assertEquals(3, cota[1], 1e-12);
+	}
+}
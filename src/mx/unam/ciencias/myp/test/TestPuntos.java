@@ -0,0 +1,152 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Puntos}
+*/
+public class TestPuntos {
+
+	@Test public void testAgrega() {
+		Puntos puntos = new Puntos(1);
+		for (int i = 0; i < 100; i++)
+			puntos.agrega(i, -i);
+		puntos.agrega(new double[] { 0.5, 1.5, 9 }, new double[] { 2, 3, 9 }, 2);
+		Assert.assertEquals(102, puntos.getLongitud());
+		Assert.assertEquals(57, puntos.getX(57), 0);
+		Assert.assertEquals(-57, puntos.getY(57), 0);
+		Assert.assertEquals(1.5, puntos.getX(101), 0);
+		Assert.assertEquals(3, puntos.getY(101), 0);
+		puntos.limpia();
+		Assert.assertEquals(0, puntos.getLongitud());
+	}
+
+	@Test public void testPoligono() {
+		Puntos puntos = new Puntos();
+		puntos.agrega(-1, 2);
+		puntos.agrega(0.5, -0.25);
+		Polygon p = puntos.poligono(100, 10, 50, -20);
+		Assert.assertEquals(2, p.npoints);
+		Assert.assertArrayEquals(new int[] { 90, 105 }, p.xpoints);
+		Assert.assertArrayEquals(new int[] { 10, 55 }, p.ypoints);
+	}
+
+	/* la distancia del punto (x, y) al segmento de a a b */
+	private static double distancia(double x, double y, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double t = dx == 0 && dy == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy);
+		t = Math.max(0, Math.min(1, t));
+		return Math.hypot(x - ax - t * dx, y - ay - t * dy);
+	}
+
+	@Test public void testSimplifica() {
+		Puntos recta = new Puntos();
+		for (int i = 0; i <= 1000; i++)
+			recta.agrega(i / 100.0, 3 * i / 100.0);
+		recta.simplifica(50, 50, 0.25);
+		Assert.assertEquals(2, recta.getLongitud());
+		Assert.assertEquals(10, recta.getX(1), 0);
+
+		Puntos seno = new Puntos();
+		Puntos original = new Puntos();
+		for (int i = 0; i <= 4000; i++) {
+			double x = -10 + i / 200.0;
+			seno.agrega(x, Math.sin(x));
+			original.agrega(x, Math.sin(x));
+		}
+		double escalaX = 40, escalaY = 60, tolerancia = 0.25;
+		seno.simplifica(escalaX, escalaY, tolerancia);
+		Assert.assertTrue(seno.getLongitud() < original.getLongitud() / 10);
+		Assert.assertEquals(original.getX(4000), seno.getX(seno.getLongitud() - 1), 0);
+		/* cada punto original queda cerca del segmento que lo salto */
+		for (int i = 0, s = 0; i <= 4000; i++) {
+			while (s + 1 < seno.getLongitud() - 1 && seno.getX(s + 1) < original.getX(i))
+				s++;
+			double d = distancia(original.getX(i) * escalaX, original.getY(i) * escalaY,
+								 seno.getX(s) * escalaX, seno.getY(s) * escalaY,
+								 seno.getX(s + 1) * escalaX, seno.getY(s + 1) * escalaY);
+			Assert.assertTrue(d <= tolerancia + 1e-9);
+		}
+	}
+
+	@Test public void testSimplificaCortes() {
+		/* los puntos que no son finitos se quedan y cortan la linea */
+		Puntos puntos = new Puntos();
+		for (int i = 0; i < 10; i++)
+			puntos.agrega(i, i);
+		puntos.agrega(10, Double.NaN);
+		for (int i = 11; i < 20; i++)
+			puntos.agrega(i, -i);
+		puntos.simplifica(1, 1, 0.5);
+		Assert.assertEquals(5, puntos.getLongitud());
+		Assert.assertEquals(9, puntos.getX(1), 0);
+		Assert.assertTrue(Double.isNaN(puntos.getY(2)));
+		Assert.assertEquals(11, puntos.getX(3), 0);
+		Assert.assertEquals(19, puntos.getX(4), 0);
+	}
+
+	@Test public void testRecorta() {
+		/* entra por abajo, sale por arriba y vuelve a entrar */
+		Puntos puntos = new Puntos();
+		puntos.agrega(0, -2);
+		puntos.agrega(1, 0);
+		puntos.agrega(2, 2);
+		puntos.agrega(3, 0);
+		puntos.recorta(-10, 10, -1, 1, null);
+		Assert.assertEquals(6, puntos.getLongitud());
+		Assert.assertEquals(0.5, puntos.getX(0), 1e-12);
+		Assert.assertEquals(-1, puntos.getY(0), 1e-12);
+		Assert.assertEquals(1, puntos.getX(1), 0);
+		Assert.assertEquals(1.5, puntos.getX(2), 1e-12);
+		Assert.assertTrue(Double.isNaN(puntos.getX(3)));
+		Assert.assertEquals(2.5, puntos.getX(4), 1e-12);
+		Assert.assertEquals(1, puntos.getY(4), 1e-12);
+		Assert.assertEquals(3, puntos.getX(5), 0);
+		Lista<Polygon> tramos = puntos.tramos(0, 10, 0, 10);
+		Assert.assertEquals(2, tramos.getLongitud());
+		Assert.assertEquals(3, tramos.getPrimero().npoints);
+		Assert.assertEquals(2, tramos.getUltimo().npoints);
+	}
+
+	@Test public void testRecortaSaltos() throws MalFormedFunctionException {
+		/* la tangente cerca de pi / 2 y una division entre cero */
+		CacheExpresiones cache = new CacheExpresiones(4);
+		Interprete tangente = cache.obten("(tan x)");
+		Puntos puntos = new Puntos();
+		puntos.agrega(1.5, Math.tan(1.5));
+		puntos.agrega(1.57, Math.tan(1.57));
+		puntos.agrega(1.58, Math.tan(1.58));
+		puntos.agrega(1.6, Math.tan(1.6));
+		puntos.agrega(1.7, Math.tan(1.7));
+		puntos.agrega(1.8, Double.POSITIVE_INFINITY);
+		puntos.agrega(1.9, 0);
+		puntos.agrega(2, 0);
+		puntos.recorta(0, 3, -20, 20, tangente::salta);
+		Lista<Polygon> tramos = puntos.tramos(0, 1, 0, 1);
+		Assert.assertEquals(3, tramos.getLongitud());
+		for (int i = 0; i < puntos.getLongitud(); i++)
+			Assert.assertTrue(Double.isNaN(puntos.getY(i)) || Math.abs(puntos.getY(i)) <= 20);
+		/* afuera por completo no queda nada */
+		puntos.limpia();
+		puntos.agrega(0, 5);
+		puntos.agrega(1, 6);
+		puntos.recorta(0, 3, -1, 1, tangente::salta);
+		Assert.assertEquals(0, puntos.getLongitud());
+
+		/* una curva continua muy empinada cruza toda la ventana en un paso
+		   pero no salta, se tiene que dibujar */
+		Interprete empinada = cache.obten("(* 100000 (cos x))");
+		puntos = empinada.evalua(-6.4, 6.4);
+		puntos.recorta(-6.4, 6.4, -4.5, 4.5, empinada::salta);
+		/* cos x cambia de signo 4 veces en [-6.4, 6.4] */
+		tramos = puntos.tramos(0, 1, 0, 1);
+		Assert.assertEquals(4, tramos.getLongitud());
+		for (Polygon tramo : tramos) {
+			Assert.assertEquals(2, tramo.npoints);
+			Assert.assertTrue(tramo.ypoints[0] * tramo.ypoints[1] < 0);
+		}
+	}
+}
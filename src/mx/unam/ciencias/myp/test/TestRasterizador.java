@@ -0,0 +1,65 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Rasterizador}
+*/
+public class TestRasterizador {
+
+	private static Lista<Lista<Polygon>> linea(int... puntos) {
+		Polygon p = new Polygon();
+		for (int i = 0; i < puntos.length; i += 2)
+			p.addPoint(puntos[i], puntos[i + 1]);
+		Lista<Polygon> l = new Lista<>();
+		l.agregaFinal(p);
+		Lista<Lista<Polygon>> graficas = new Lista<>();
+		graficas.agregaFinal(l);
+		return graficas;
+	}
+
+	private static int alfa(int pixel) {
+		return pixel >>> 24;
+	}
+
+	@Test public void testHorizontal() {
+		Rasterizador r = new Rasterizador(300, 200);
+		r.dibuja(linea(10, 100, 290, 100));
+		int[] pixeles = r.pixeles();
+		/* grosor 2 centrado en el renglon 100: cubre medio 99, todo 100 y medio 101 */
+		for (int x = 10; x <= 290; x++) {
+			Assert.assertEquals(128, alfa(pixeles[99 * 300 + x]));
+			Assert.assertEquals(255, alfa(pixeles[100 * 300 + x]));
+			Assert.assertEquals(128, alfa(pixeles[101 * 300 + x]));
+			Assert.assertEquals(0, alfa(pixeles[102 * 300 + x]));
+		}
+		Assert.assertEquals(0, alfa(pixeles[100 * 300 + 9]));
+		Assert.assertEquals(0, alfa(pixeles[100 * 300 + 291]));
+	}
+
+	@Test public void testSimetrica() {
+		/* la misma linea transpuesta da la imagen transpuesta */
+		Rasterizador a = new Rasterizador(150, 150);
+		Rasterizador b = new Rasterizador(150, 150);
+		a.dibuja(linea(3, 7, 140, 60, 20, 130));
+		b.dibuja(linea(7, 3, 60, 140, 130, 20));
+		for (int y = 0; y < 150; y++)
+			for (int x = 0; x < 150; x++)
+				Assert.assertEquals(a.pixeles()[y * 150 + x], b.pixeles()[x * 150 + y]);
+	}
+
+	@Test public void testFuera() {
+		/* puntos muy lejos de la imagen, como los de una asintota */
+		Rasterizador r = new Rasterizador(200, 100);
+		r.dibuja(linea(0, 50, 100, -2000000000, 101, 2000000000, 199, 50));
+		BufferedImage imagen = r.imagen();
+		Assert.assertEquals(200, imagen.getWidth());
+		Assert.assertEquals(100, imagen.getHeight());
+		Assert.assertEquals(r.pixeles()[50 * 200 + 100], imagen.getRGB(100, 50));
+		Assert.assertTrue(alfa(r.pixeles()[20 * 200 + 100]) > 0);
+	}
+}
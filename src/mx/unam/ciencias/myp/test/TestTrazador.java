@@ -0,0 +1,83 @@
+package mx.unam.ciencias.myp.test;
+import mx.unam.ciencias.myp.*;
+import mx.unam.ciencias.edd.Lista;
+import java.awt.Polygon;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+* Clase para las pruebas unitarias de la clase {@link Trazador}
+*/
+public class TestTrazador {
+
+	/* un trazador con los metodos que usa la interfaz a la mano */
+	private static class TrazadorPrueba extends Trazador {
+		TrazadorPrueba(int ancho, int alto, double x0, double x1, double y0, double y1) {
+			super(ancho, alto, x0, x1, y0, y1);
+		}
+
+		@Override public void retraza() {
+			super.retraza();
+		}
+
+		void rango(double x0, double x1, double y0, double y1) {
+			setMedidasYrango(900, 600, x0, x1, y0, y1);
+		}
+	}
+
+	/* cuantas graficas tiene el SVG, una trayectoria por funcion */
+	private static int graficas(Trazador trazador) {
+		String svg = trazador.getSVG();
+		return svg.split("<path", -1).length - 1;
+	}
+
+	@Test public void testRetraza() throws MalFormedFunctionException {
+		TrazadorPrueba trazador = new TrazadorPrueba(900, 600, -6.4, 6.4, -4.5, 4.5);
+		trazador.setFormatoSVG(EscritorSVG.Formato.TRAYECTORIA, 1);
+		int n = 8;
+		for (int k = 0; k < n; k++)
+			trazador.agregaFuncion("(+ (sin x) " + (k - 3.5) + ")");
+		for (int vez = 0; vez < 5; vez++) {
+			if (vez % 2 == 0)
+				trazador.retraza();
+			else
+				trazador.rango(-6.4 + vez, 6.4 + vez, -4.5, 4.5);
+			Lista<Lista<Polygon>> poligonos = trazador.listaPoligonos();
+			Assert.assertEquals(n, poligonos.getLongitud());
+			Assert.assertEquals(n, graficas(trazador));
+			/* cada funcion esta mas arriba que la anterior, asi que en
+			   pixeles su primer punto tiene una y menor */
+			int anterior = Integer.MAX_VALUE;
+			for (Lista<Polygon> grafica : poligonos) {
+				Assert.assertEquals(1, grafica.getLongitud());
+				int y = grafica.getPrimero().ypoints[0];
+				Assert.assertTrue(y < anterior);
+				anterior = y;
+			}
+		}
+	}
+
+	@Test public void testRetrazaInterrumpido() throws MalFormedFunctionException {
+		TrazadorPrueba trazador = new TrazadorPrueba(900, 600, -6.4, 6.4, -4.5, 4.5);
+		for (int k = 0; k < 4; k++)
+			trazador.agregaFuncion("(* " + (k + 1) + " (sin x))");
+		trazador.setFormatoSVG(EscritorSVG.Formato.TRAYECTORIA, 1);
+		Lista<Lista<Polygon>> antes = trazador.listaPoligonos();
+		/* interrumpido no espera los trazos y deja las graficas como estaban */
+		Thread.currentThread().interrupt();
+		try {
+			trazador.rango(-1, 1, -4.5, 4.5);
+			Assert.assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		Assert.assertSame(antes, trazador.listaPoligonos());
+		Assert.assertEquals(4, antes.getLongitud());
+		Assert.assertEquals(4, graficas(trazador));
+		/* y el siguiente trazo las reemplaza todas */
+		trazador.retraza();
+		Assert.assertNotSame(antes, trazador.listaPoligonos());
+		Assert.assertEquals(4, trazador.listaPoligonos().getLongitud());
+		Assert.assertEquals(4, graficas(trazador));
+	}
+}